@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Translation of typical midPoint filters.
+ *
+ * @author gpalos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterTranslatorBenchmark {
+
+    private Filter byUid;
+    private Filter byNameAndFirstName;
+    private Filter orOfNames;
+    private Filter notContains;
+
+    @Setup
+    public void setUp() {
+        byUid = FilterBuilder.equalTo(new Uid(UserPayloads.id(1)));
+        byNameAndFirstName = FilterBuilder.and(
+                FilterBuilder.equalTo(AttributeBuilder.build(Name.NAME, UserPayloads.email(1))),
+                FilterBuilder.startsWith(AttributeBuilder.build(SmartRecruitersConnector.ATTR_FIRST_NAME, "Fir")));
+        orOfNames = FilterBuilder.or(
+                FilterBuilder.equalTo(AttributeBuilder.build(Name.NAME, UserPayloads.email(1))),
+                FilterBuilder.equalTo(AttributeBuilder.build(Name.NAME, UserPayloads.email(2))));
+        notContains = FilterBuilder.not(
+                FilterBuilder.contains(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LAST_NAME, "ast")));
+    }
+
+    @Benchmark
+    public List<SmartRecruitersFilter> equalsUid() {
+        return new SmartRecruitersFilterTranslator().translate(byUid);
+    }
+
+    @Benchmark
+    public List<SmartRecruitersFilter> andOfNameAndFirstName() {
+        return new SmartRecruitersFilterTranslator().translate(byNameAndFirstName);
+    }
+
+    @Benchmark
+    public List<SmartRecruitersFilter> orOfNames() {
+        return new SmartRecruitersFilterTranslator().translate(orOfNames);
+    }
+
+    @Benchmark
+    public List<SmartRecruitersFilter> notContains() {
+        return new SmartRecruitersFilterTranslator().translate(notContains);
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of one list page, streamed by UserPageReader and as a whole JSONObject like before.
+ *
+ * @author gpalos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageParsingBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"100", "1000"})
+    public int users;
+
+    private byte[] page;
+
+    @Setup
+    public void setUp() {
+        page = UserPayloads.bytes(UserPayloads.page(users, 0, users));
+    }
+
+    @Benchmark
+    public UserPage streamed(final Blackhole blackhole) throws IOException {
+        UserPageReader reader = new UserPageReader(new InputStreamReader(new ByteArrayInputStream(page), UTF_8));
+        return reader.read(new UserPageReader.UserHandler() {
+            @Override
+            public boolean handle(JSONObject user) {
+                blackhole.consume(user);
+                return true;
+            }
+        });
+    }
+
+    @Benchmark
+    public JSONObject whole() {
+        return new JSONObject(new String(page, UTF_8));
+    }
+}
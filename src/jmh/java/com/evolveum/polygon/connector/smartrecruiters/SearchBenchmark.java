@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing of all users: page parsing and conversion to connector objects.
+ *
+ * @author gpalos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+
+    private static final ObjectClass ACCOUNT = new ObjectClass(ObjectClass.ACCOUNT_NAME);
+
+    @Param({"100", "1000"})
+    public int users;
+
+    @Param({"false", "true"})
+    public boolean streamListPages;
+
+    /**
+     * all attributes or only name and activation
+     */
+    @Param({"all", "name"})
+    public String attributes;
+
+    private StubbedConnector connector;
+    private OperationOptions options;
+
+    @Setup
+    public void setUp() {
+        SmartRecruitersConfiguration configuration = StubbedConnector.configuration(100);
+        configuration.setStreamListPages(streamListPages);
+        connector = new StubbedConnector(users, 100);
+        connector.init(configuration);
+        OperationOptionsBuilder builder = new OperationOptionsBuilder();
+        if ("name".equals(attributes)) {
+            builder.setAttributesToGet("__NAME__", "__ENABLE__");
+        }
+        options = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        connector.dispose();
+    }
+
+    @Benchmark
+    public void findAll(final Blackhole blackhole) {
+        connector.executeQuery(ACCOUNT, null, new ResultsHandler() {
+            @Override
+            public boolean handle(ConnectorObject connectorObject) {
+                blackhole.consume(connectorObject);
+                return true;
+            }
+        }, options);
+    }
+}
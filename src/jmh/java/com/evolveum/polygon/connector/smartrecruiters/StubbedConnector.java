@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.identityconnectors.common.security.GuardedString;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Connector answering requests from prepared payloads without network, so only the connector code is measured.
+ *
+ * @author gpalos
+ */
+public class StubbedConnector extends SmartRecruitersConnector {
+
+    public static final String SERVICE_ADDRESS = "https://api.smartrecruiters.com/users";
+
+    private static final byte[] NOT_FOUND = UserPayloads.bytes(UserPayloads.page(0, 0, 0));
+
+    private final int users;
+    private final int pageSize;
+    private final Map<Integer, byte[]> pages = new HashMap<Integer, byte[]>();
+    private final byte[] detail = UserPayloads.bytes(UserPayloads.detailUser(1));
+
+    public StubbedConnector(int users, int pageSize) {
+        this.users = users;
+        this.pageSize = pageSize;
+        for (int offset = 0; offset <= users; offset += pageSize) {
+            pages.put(offset, UserPayloads.bytes(UserPayloads.page(users, offset, pageSize)));
+        }
+    }
+
+    public static SmartRecruitersConfiguration configuration(int pageSize) {
+        SmartRecruitersConfiguration configuration = new SmartRecruitersConfiguration();
+        configuration.setServiceAddress(SERVICE_ADDRESS);
+        configuration.setAuthMethod("TOKEN");
+        configuration.setTokenName("X-SmartToken");
+        configuration.setTokenValue(new GuardedString("benchmark".toCharArray()));
+        configuration.setPageSize(pageSize);
+        return configuration;
+    }
+
+    @Override
+    protected CloseableHttpResponse executeRequest(HttpRequestBase request) throws IOException {
+        String method = request.getMethod();
+        String path = request.getURI().getPath();
+        String query = request.getURI().getRawQuery();
+        if (path.endsWith("/activation")) {
+            return new StubResponse(204, null);
+        }
+        if ("GET".equals(method) && query != null && query.contains("q=")) {
+            // duplicity search before create
+            return new StubResponse(200, NOT_FOUND);
+        }
+        if ("GET".equals(method) && query != null) {
+            byte[] page = pages.get(offset(query));
+            return new StubResponse(200, page == null ? UserPayloads.bytes(UserPayloads.page(users, offset(query), pageSize)) : page);
+        }
+        // detail, create and update return the user
+        return new StubResponse("POST".equals(method) ? 201 : 200, detail);
+    }
+
+    private int offset(String query) {
+        int start = query.indexOf("offset=");
+        if (start < 0) {
+            return 0;
+        }
+        start += "offset=".length();
+        int end = query.indexOf('&', start);
+        return Integer.parseInt(end < 0 ? query.substring(start) : query.substring(start, end));
+    }
+
+    private static class StubResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+        StubResponse(int statusCode, byte[] body) {
+            super(new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, null));
+            if (body != null) {
+                setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
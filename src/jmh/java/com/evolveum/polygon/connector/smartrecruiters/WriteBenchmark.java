@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.objects.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building of the create payload and of the update JSON Patch from a full attribute set, as sent by midPoint.
+ *
+ * @author gpalos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+
+    private static final ObjectClass ACCOUNT = new ObjectClass(ObjectClass.ACCOUNT_NAME);
+
+    @Param({"false", "true"})
+    public boolean diffPatch;
+
+    private StubbedConnector connector;
+    private Set<Attribute> attributes;
+    private Uid uid;
+
+    @Setup
+    public void setUp() {
+        SmartRecruitersConfiguration configuration = StubbedConnector.configuration(100);
+        configuration.setDiffPatch(diffPatch);
+        connector = new StubbedConnector(1, 100);
+        connector.init(configuration);
+
+        attributes = new HashSet<Attribute>();
+        attributes.add(AttributeBuilder.build(Name.NAME, UserPayloads.email(1)));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_FIRST_NAME, "First1"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LAST_NAME, "Changed"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_ROLES, "EMPLOYEE", "STANDARD"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_EXTERNAL_DATA, "employee-1"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_SSO_IDENTIFIER, "sso-1"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LOCATION_COUNTRY, "Slovakia"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LOCATION_COUNTRY_COODE, "sk"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LOCATION_CITY, "Bratislava"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LOCATION_ADDRESS, "Street 1"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LOCATION_POSTAL_CODE, "811 01"));
+        attributes.add(AttributeBuilder.build(OperationalAttributes.ENABLE_NAME, true));
+        attributes.add(AttributeBuilder.build(OperationalAttributes.PASSWORD_NAME, new GuardedString("secret".toCharArray())));
+        uid = new Uid(UserPayloads.id(1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        connector.dispose();
+    }
+
+    @Benchmark
+    public Uid create() {
+        return connector.create(ACCOUNT, attributes, null);
+    }
+
+    @Benchmark
+    public Uid update() {
+        return connector.update(ACCOUNT, uid, attributes, null);
+    }
+}
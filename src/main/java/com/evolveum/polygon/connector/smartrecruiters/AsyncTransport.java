@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHttpResponse;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Non-blocking HTTP client (Apache HttpAsyncClient) shared by all connector instances with the same service address
+ * and credentials. Requests are sent without waiting, a handful of I/O threads serves all open connections.
+ *
+ * @author gpalos
+ */
+public class AsyncTransport implements Transport {
+
+    private static final Log LOG = Log.getLog(AsyncTransport.class);
+
+    private static final String AUTH_BASIC = "BASIC";
+    private static final String AUTH_TOKEN = "TOKEN";
+
+    private static final Map<String, AsyncTransport> TRANSPORTS = new HashMap<String, AsyncTransport>();
+
+    private final String key;
+    private final CloseableHttpAsyncClient httpClient;
+    private final String tokenName;
+    private final GuardedString tokenValue;
+    private int references;
+
+    private AsyncTransport(String key, SmartRecruitersConfiguration configuration) {
+        this.key = key;
+        int ioThreads = configuration.getAsyncIoThreads() > 0 ? configuration.getAsyncIoThreads() : Runtime.getRuntime().availableProcessors();
+        HttpAsyncClientBuilder clientBuilder = HttpAsyncClientBuilder.create()
+                .setMaxConnPerRoute(configuration.getMaxConnectionsPerRoute())
+                .setMaxConnTotal(configuration.getMaxConnectionsTotal())
+                .setKeepAliveStrategy(SharedConnectionPool.createKeepAliveStrategy(configuration))
+                .setDefaultIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(ioThreads).build())
+                .setThreadFactory(ExecutorFactory.newThreadFactory("smartrecruiters-io-"))
+                .setDefaultRequestConfig(SharedConnectionPool.createRequestConfig(configuration))
+                .setProxy(SharedConnectionPool.createProxy(configuration));
+
+        if (Boolean.TRUE.equals(configuration.getTrustAllCertificates())) {
+            clientBuilder.setSSLContext(SharedConnectionPool.createTrustAllSslContext())
+                    .setSSLHostnameVerifier(NoopHostnameVerifier.INSTANCE);
+        }
+        if (AUTH_BASIC.equals(configuration.getAuthMethod())) {
+            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(AuthScope.ANY,
+                    new UsernamePasswordCredentials(configuration.getUsername(), SharedConnectionPool.reveal(configuration.getPassword())));
+            clientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+        }
+        if (AUTH_TOKEN.equals(configuration.getAuthMethod())) {
+            this.tokenName = configuration.getTokenName();
+            this.tokenValue = configuration.getTokenValue();
+        } else {
+            this.tokenName = null;
+            this.tokenValue = null;
+        }
+
+        this.httpClient = clientBuilder.build();
+        httpClient.start();
+    }
+
+    /**
+     * Returns started transport for the configuration, every acquire has to be followed by {@link #release()}.
+     */
+    public static AsyncTransport acquire(SmartRecruitersConfiguration configuration) {
+        String key = SharedConnectionPool.createKey(configuration);
+        synchronized (TRANSPORTS) {
+            AsyncTransport transport = TRANSPORTS.get(key);
+            if (transport == null) {
+                transport = new AsyncTransport(key, configuration);
+                TRANSPORTS.put(key, transport);
+                LOG.ok("created async transport for {0}", configuration.getServiceAddress());
+            }
+            transport.references++;
+            return transport;
+        }
+    }
+
+    /**
+     * Stops the I/O threads when the last connector instance released the transport.
+     */
+    @Override
+    public void release() {
+        synchronized (TRANSPORTS) {
+            references--;
+            if (references > 0) {
+                return;
+            }
+            TRANSPORTS.remove(key);
+        }
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            LOG.warn(e, "Error when closing async transport: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Sends the request and returns immediately, response body is read to memory before the future completes.
+     *
+     * @param callback notified on an I/O thread, must not block; can be null
+     */
+    public Future<HttpResponse> execute(HttpUriRequest request, FutureCallback<HttpResponse> callback) {
+        if (tokenName != null && tokenValue != null) {
+            request.setHeader(tokenName, SharedConnectionPool.reveal(tokenValue));
+        }
+        return httpClient.execute(request, callback);
+    }
+
+    /**
+     * Sends the request and waits for the response, for callers which need the response before they continue.
+     */
+    @Override
+    public CloseableHttpResponse send(HttpRequestBase request) {
+        Future<HttpResponse> future = execute(request, null);
+        try {
+            return new BufferedResponse(future.get());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ConnectorIOException("Interrupted when waiting for response: " + request.getURI(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            throw new ConnectorIOException(cause.getMessage(), cause);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncTransport{" +
+                "references=" + references +
+                ", running=" + httpClient.isRunning() +
+                '}';
+    }
+
+    /**
+     * Response already read by the async client, there is no connection to release on close.
+     */
+    static class BufferedResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+        BufferedResponse(HttpResponse response) {
+            super(response.getStatusLine());
+            setHeaders(response.getAllHeaders());
+            setEntity(response.getEntity());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
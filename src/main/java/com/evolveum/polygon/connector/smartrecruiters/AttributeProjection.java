@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.filter.AttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.CompositeFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.NotFilter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Attributes to get compiled once per search, only these attributes are converted from the user JSON.
+ * Attributes used by the locally evaluated filter are always included.
+ *
+ * @author gpalos
+ */
+public class AttributeProjection {
+
+    /**
+     * all attributes are returned
+     */
+    public static final AttributeProjection ALL = new AttributeProjection(null);
+
+    /**
+     * null - all attributes
+     */
+    private final Set<String> attributes;
+
+    private final boolean location;
+
+    private AttributeProjection(Set<String> attributes) {
+        this.attributes = attributes;
+        this.location = containsDetailOnly();
+    }
+
+    public static AttributeProjection of(OperationOptions options, Filter residual) {
+        if (options == null || options.getAttributesToGet() == null) {
+            // not configured, get all data
+            return ALL;
+        }
+        Set<String> attributes = new HashSet<String>();
+        Collections.addAll(attributes, options.getAttributesToGet());
+        addFilterAttributes(residual, attributes);
+        return new AttributeProjection(attributes);
+    }
+
+    public boolean contains(String attrName) {
+        return attributes == null || attributes.contains(attrName);
+    }
+
+    /**
+     * @return true, if some location attribute (available only in user detail) is requested
+     */
+    public boolean containsLocation() {
+        return location;
+    }
+
+    private boolean containsDetailOnly() {
+        for (UserAttribute attribute : UserAttribute.readable()) {
+            if (attribute.isDetailOnly() && contains(attribute.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addFilterAttributes(Filter filter, Set<String> attributes) {
+        if (filter instanceof AttributeFilter) {
+            attributes.add(((AttributeFilter) filter).getName());
+        } else if (filter instanceof CompositeFilter) {
+            addFilterAttributes(((CompositeFilter) filter).getLeft(), attributes);
+            addFilterAttributes(((CompositeFilter) filter).getRight(), attributes);
+        } else if (filter instanceof NotFilter) {
+            addFilterAttributes(((NotFilter) filter).getFilter(), attributes);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AttributeProjection{" +
+                "attributes=" + (attributes == null ? "ALL" : attributes) +
+                '}';
+    }
+}
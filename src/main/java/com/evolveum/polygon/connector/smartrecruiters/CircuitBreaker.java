@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.common.logging.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Circuit breaker of one endpoint shared by all connector instances of the same service address.
+ * After failureThreshold consecutive failures requests fail fast for openMillis, then one trial request is allowed.
+ *
+ * @author gpalos
+ */
+public class CircuitBreaker {
+
+    private static final Log LOG = Log.getLog(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final Map<String, CircuitBreaker> BREAKERS = new HashMap<String, CircuitBreaker>();
+
+    private final String name;
+    private int failureThreshold;
+    private long openMillis;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean trialRunning;
+
+    private long opened;
+    private long rejected;
+
+    CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @param failureThreshold consecutive failures to open the circuit, 0 - never open
+     */
+    public static CircuitBreaker getInstance(String serviceAddress, Endpoint endpoint, int failureThreshold, long openMillis) {
+        String key = serviceAddress + "|" + endpoint;
+        synchronized (BREAKERS) {
+            CircuitBreaker breaker = BREAKERS.get(key);
+            if (breaker == null) {
+                breaker = new CircuitBreaker(endpoint.name(), failureThreshold, openMillis);
+                BREAKERS.put(key, breaker);
+            } else {
+                breaker.configure(failureThreshold, openMillis);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * @return false, if the circuit is open and request has to fail fast
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                rejected++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialRunning = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialRunning) {
+                rejected++;
+                return false;
+            }
+            trialRunning = true;
+        }
+        return true;
+    }
+
+    public synchronized void success() {
+        if (state != State.CLOSED) {
+            LOG.info("Circuit breaker {0} closed", name);
+        }
+        state = State.CLOSED;
+        failures = 0;
+        trialRunning = false;
+    }
+
+    public synchronized void failure() {
+        failures++;
+        trialRunning = false;
+        if (state == State.HALF_OPEN || (failureThreshold > 0 && failures >= failureThreshold && state == State.CLOSED)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            opened++;
+            LOG.warn("Circuit breaker {0} opened after {1} failures for {2} ms", name, failures, openMillis);
+        }
+    }
+
+    /**
+     * Request allowed by {@link #allowRequest()} ended without a response or error of the server (interrupted,
+     * cancelled, unexpected error), another trial request can be sent.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            trialRunning = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized long getOpened() {
+        return opened;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    private synchronized void configure(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{" +
+                "name=" + name +
+                ", state=" + state +
+                ", failures=" + failures +
+                ", opened=" + opened +
+                ", rejected=" + rejected +
+                '}';
+    }
+}
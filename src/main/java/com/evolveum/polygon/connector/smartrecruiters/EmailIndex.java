@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * E-mail to user id index shared by all connector instances of the same service address. It is filled by listing,
+ * searches, create and update. After a complete scan of all users, an e-mail not present in the index is known
+ * to be free until the index gets stale, so the duplicity search before create can be skipped.
+ * SmartRecruiters still reports real duplicity with 409 Conflict.
+ *
+ * @author gpalos
+ */
+public class EmailIndex {
+
+    private static final Map<String, EmailIndex> INDEXES = new HashMap<String, EmailIndex>();
+
+    private final ConcurrentHashMap<String, String> idsByEmail = new ConcurrentHashMap<String, String>();
+
+    private volatile long stalenessMillis;
+
+    /**
+     * start time of the last complete scan, 0 - never completed
+     */
+    private volatile long completeSince;
+
+    EmailIndex(long stalenessMillis) {
+        this.stalenessMillis = stalenessMillis;
+    }
+
+    public static EmailIndex getInstance(String serviceAddress, long stalenessMillis) {
+        synchronized (INDEXES) {
+            EmailIndex index = INDEXES.get(serviceAddress);
+            if (index == null) {
+                index = new EmailIndex(stalenessMillis);
+                INDEXES.put(serviceAddress, index);
+            } else {
+                index.stalenessMillis = stalenessMillis;
+            }
+            return index;
+        }
+    }
+
+    public void put(String email, String uid) {
+        if (email == null || uid == null) {
+            return;
+        }
+        idsByEmail.put(normalize(email), uid);
+    }
+
+    /**
+     * Removes all e-mails of the user, used when the e-mail was changed.
+     */
+    public void removeUid(String uid) {
+        idsByEmail.values().removeAll(Collections.singleton(uid));
+    }
+
+    /**
+     * @return id of the user with the e-mail or null when not known
+     */
+    public String getUid(String email) {
+        return email == null ? null : idsByEmail.get(normalize(email));
+    }
+
+    /**
+     * @return true, if the e-mail was not found during the last complete scan which is not stale yet
+     */
+    public boolean isKnownAbsent(String email) {
+        if (email == null || completeSince == 0) {
+            return false;
+        }
+        if (System.currentTimeMillis() - completeSince > stalenessMillis) {
+            return false;
+        }
+        return !idsByEmail.containsKey(normalize(email));
+    }
+
+    /**
+     * All users were listed, scan started at scanStart.
+     */
+    public void scanCompleted(long scanStart) {
+        if (scanStart > completeSince) {
+            completeSince = scanStart;
+        }
+    }
+
+    public int size() {
+        return idsByEmail.size();
+    }
+
+    private String normalize(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String toString() {
+        return "EmailIndex{" +
+                "size=" + size() +
+                ", completeSince=" + completeSince +
+                ", stalenessMillis=" + stalenessMillis +
+                '}';
+    }
+}
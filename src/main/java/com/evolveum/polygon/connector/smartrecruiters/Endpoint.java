@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * SmartRecruiters users API endpoints used by the connector.
+ *
+ * @author gpalos
+ */
+public enum Endpoint {
+
+    /**
+     * GET /me
+     */
+    ME,
+    /**
+     * GET ?offset=&limit=&q=
+     */
+    LIST,
+    /**
+     * GET /{id}
+     */
+    DETAIL,
+    /**
+     * POST /
+     */
+    CREATE,
+    /**
+     * PATCH /{id}
+     */
+    UPDATE,
+    /**
+     * PUT or DELETE /{id}/activation
+     */
+    ACTIVATION;
+
+    private static final String PATH_ME = "/me";
+    private static final String PATH_ACTIVATION = "/activation";
+
+    public static Endpoint of(HttpRequestBase request, String serviceAddress) {
+        String uri = request.getURI().toString();
+        String path = uri.startsWith(serviceAddress) ? uri.substring(serviceAddress.length()) : request.getURI().getPath();
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        if (PATH_ME.equals(path)) {
+            return ME;
+        }
+        if (path.endsWith(PATH_ACTIVATION)) {
+            return ACTIVATION;
+        }
+        if (path.isEmpty()) {
+            return "POST".equals(request.getMethod()) ? CREATE : LIST;
+        }
+        return "PATCH".equals(request.getMethod()) ? UPDATE : DETAIL;
+    }
+
+    /**
+     * @return true, if the request can be safely repeated (GET, PATCH, PUT and DELETE on activation)
+     */
+    public static boolean isIdempotent(HttpRequestBase request, Endpoint endpoint) {
+        String method = request.getMethod();
+        if ("GET".equals(method) || "PATCH".equals(method)) {
+            return true;
+        }
+        return endpoint == ACTIVATION && ("PUT".equals(method) || "DELETE".equals(method));
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.common.logging.Log;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors for blocking HTTP calls. Virtual threads are used when requested and the JDK supports them
+ * (Java 21+, found over reflection, the connector is still built for older Java), otherwise daemon platform
+ * threads in a pool.
+ *
+ * @author gpalos
+ */
+public final class ExecutorFactory {
+
+    private static final Log LOG = Log.getLog(ExecutorFactory.class);
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = findNewThreadPerTaskExecutor();
+
+    private ExecutorFactory() {
+    }
+
+    private static Method findNewThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static boolean isVirtualThreadsAvailable() {
+        return NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @param threads        maximum number of concurrently running tasks, 0 - not limited
+     * @param virtualThreads run tasks on virtual threads when available
+     */
+    public static ExecutorService newExecutor(String namePrefix, int threads, boolean virtualThreads) {
+        if (virtualThreads) {
+            ExecutorService executor = newVirtualThreadExecutor(namePrefix);
+            if (executor != null) {
+                // one cheap thread per task, limit is only for concurrent requests
+                return threads > 0 ? new BoundedExecutor(executor, threads) : executor;
+            }
+            LOG.warn("Virtual threads are not available in Java {0}, using thread pool for {1}",
+                    System.getProperty("java.version"), namePrefix);
+        }
+        if (threads > 0) {
+            return Executors.newFixedThreadPool(threads, newThreadFactory(namePrefix));
+        }
+        return Executors.newCachedThreadPool(newThreadFactory(namePrefix));
+    }
+
+    private static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+        if (NEW_THREAD_PER_TASK_EXECUTOR == null) {
+            return null;
+        }
+        try {
+            // Thread.ofVirtual().name(namePrefix, 1).factory()
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (Exception e) {
+            LOG.warn(e, "Virtual thread executor can't be created: {0}", e.getMessage());
+            return null;
+        }
+    }
+
+    static ThreadFactory newThreadFactory(final String namePrefix) {
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Runs at most the given number of tasks at the same time, others wait for a permit in their own thread.
+     */
+    static class BoundedExecutor extends AbstractExecutorService {
+        private final ExecutorService executor;
+        private final Semaphore permits;
+
+        BoundedExecutor(ExecutorService executor, int threads) {
+            this.executor = executor;
+            this.permits = new Semaphore(threads);
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        // shut down before started
+                        Thread.currentThread().interrupt();
+                        if (command instanceof Future) {
+                            // submitted task, caller waiting for its result sees it cancelled
+                            ((Future<?>) command).cancel(false);
+                        } else {
+                            // nobody would know the task was dropped, it runs interrupted and can fail
+                            command.run();
+                        }
+                        return;
+                    }
+                    try {
+                        command.run();
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return executor.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return executor.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return executor.awaitTermination(timeout, unit);
+        }
+    }
+}
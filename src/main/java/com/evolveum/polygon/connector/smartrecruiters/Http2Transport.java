@@ -0,0 +1,375 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.util.EntityUtils;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP/2 client of the JDK (java.net.http, Java 11+) shared by all connector instances with the same service address
+ * and credentials. Concurrent requests (e.g. parallel detail reads) are multiplexed over one TLS connection, server
+ * without HTTP/2 support is called over HTTP/1.1. The client is found over reflection, the connector is still built
+ * for older Java.
+ *
+ * @author gpalos
+ */
+public class Http2Transport implements Transport {
+
+    private static final Log LOG = Log.getLog(Http2Transport.class);
+
+    private static final String AUTH_BASIC = "BASIC";
+    private static final String AUTH_TOKEN = "TOKEN";
+
+    private static final int DEFAULT_PROXY_PORT = 80;
+
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+    /**
+     * Headers set by the JDK client itself, it refuses them in the request.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<String>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade"));
+
+    private static final Map<String, Http2Transport> TRANSPORTS = new HashMap<String, Http2Transport>();
+
+    private static final Api API = Api.find();
+
+    private final String key;
+    private final Object httpClient;
+    private final Duration requestTimeout;
+    private final String authHeaderName;
+    private final String authHeaderValue;
+    private int references;
+
+    private final AtomicLong http2Responses = new AtomicLong();
+    private final AtomicLong http11Responses = new AtomicLong();
+
+    private Http2Transport(String key, SmartRecruitersConfiguration configuration) {
+        this.key = key;
+        Object builder = invoke(API.newClientBuilder, null);
+        builder = invoke(API.version, builder, API.http2);
+        if (Boolean.TRUE.equals(configuration.getTrustAllCertificates())) {
+            // certificates are trusted, host name is still verified by the JDK client
+            builder = invoke(API.sslContext, builder, SharedConnectionPool.createTrustAllSslContext());
+        }
+        Integer connectTimeout = SharedConnectionPool.getTimeout(configuration, SharedConnectionPool.PROPERTY_CONNECT_TIMEOUT);
+        if (connectTimeout != null) {
+            builder = invoke(API.connectTimeout, builder, Duration.ofMillis(connectTimeout));
+        }
+        HttpHost proxy = SharedConnectionPool.createProxy(configuration);
+        if (proxy != null) {
+            InetSocketAddress address = new InetSocketAddress(proxy.getHostName(), proxy.getPort() < 0 ? DEFAULT_PROXY_PORT : proxy.getPort());
+            builder = invoke(API.proxy, builder, invoke(API.proxySelectorOf, null, address));
+        }
+        this.httpClient = invoke(API.buildClient, builder);
+        // JDK client has no socket timeout, the nearest is the time to receive the response headers
+        Integer socketTimeout = SharedConnectionPool.getTimeout(configuration, SharedConnectionPool.PROPERTY_SOCKET_TIMEOUT);
+        this.requestTimeout = socketTimeout == null ? null : Duration.ofMillis(socketTimeout);
+
+        if (AUTH_BASIC.equals(configuration.getAuthMethod())) {
+            // preemptive, JDK client would repeat every request after 401 challenge
+            String credentials = configuration.getUsername() + ":" + SharedConnectionPool.reveal(configuration.getPassword());
+            this.authHeaderName = "Authorization";
+            this.authHeaderValue = "Basic " + Base64.encodeBase64String(credentials.getBytes(Charset.forName("UTF-8")));
+        } else if (AUTH_TOKEN.equals(configuration.getAuthMethod())) {
+            this.authHeaderName = configuration.getTokenName();
+            this.authHeaderValue = SharedConnectionPool.reveal(configuration.getTokenValue());
+        } else {
+            this.authHeaderName = null;
+            this.authHeaderValue = null;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return API != null;
+    }
+
+    /**
+     * Returns transport for the configuration, every acquire has to be followed by {@link #release()}.
+     */
+    public static Http2Transport acquire(SmartRecruitersConfiguration configuration) {
+        if (API == null) {
+            throw new IllegalStateException("java.net.http is not available in Java " + System.getProperty("java.version"));
+        }
+        String key = SharedConnectionPool.createKey(configuration);
+        synchronized (TRANSPORTS) {
+            Http2Transport transport = TRANSPORTS.get(key);
+            if (transport == null) {
+                transport = new Http2Transport(key, configuration);
+                TRANSPORTS.put(key, transport);
+                LOG.ok("created HTTP/2 transport for {0}", configuration.getServiceAddress());
+            }
+            transport.references++;
+            return transport;
+        }
+    }
+
+    /**
+     * Closes the client when the last connector instance released it (Java 21+, older clients are closed
+     * by the garbage collector).
+     */
+    @Override
+    public void release() {
+        synchronized (TRANSPORTS) {
+            references--;
+            if (references > 0) {
+                return;
+            }
+            TRANSPORTS.remove(key);
+        }
+        if (httpClient instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) httpClient).close();
+            } catch (Exception e) {
+                LOG.warn(e, "Error when closing HTTP/2 transport: {0}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public CloseableHttpResponse send(HttpRequestBase request) throws IOException {
+        final Future<?> future = (Future<?>) invoke(API.sendAsync, httpClient, createRequest(request), invoke(API.ofInputStream, null));
+        // abort() of the request cancels waiting for the response
+        request.setCancellable(new Cancellable() {
+            @Override
+            public boolean cancel() {
+                return future.cancel(true);
+            }
+        });
+
+        try {
+            return createResponse(future.get());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ConnectorIOException("Interrupted when waiting for response: " + request.getURI(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new ConnectorIOException(cause.getMessage(), cause);
+        }
+    }
+
+    private Object createRequest(HttpRequestBase request) throws IOException {
+        Object body = invoke(API.noBody, null);
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null) {
+                body = invoke(API.ofByteArray, null, (Object) EntityUtils.toByteArray(entity));
+            }
+        }
+        Object builder = invoke(API.newRequestBuilder, null, request.getURI());
+        builder = invoke(API.method, builder, request.getMethod(), body);
+        for (Header header : request.getAllHeaders()) {
+            if (!RESTRICTED_HEADERS.contains(header.getName().toLowerCase(Locale.ENGLISH))) {
+                builder = invoke(API.header, builder, header.getName(), header.getValue());
+            }
+        }
+        if (authHeaderName != null && authHeaderValue != null) {
+            builder = invoke(API.header, builder, authHeaderName, authHeaderValue);
+        }
+        if (requestTimeout != null) {
+            builder = invoke(API.timeout, builder, requestTimeout);
+        }
+        return invoke(API.buildRequest, builder);
+    }
+
+    @SuppressWarnings("unchecked")
+    private CloseableHttpResponse createResponse(Object response) {
+        int statusCode = (Integer) invoke(API.statusCode, response);
+        boolean http2 = API.http2.equals(invoke(API.responseVersion, response));
+        (http2 ? http2Responses : http11Responses).incrementAndGet();
+
+        StreamedResponse result = new StreamedResponse(new BasicStatusLine(http2 ? HTTP_2 : HttpVersion.HTTP_1_1, statusCode,
+                EnglishReasonPhraseCatalog.INSTANCE.getReason(statusCode, Locale.ENGLISH)));
+        Map<String, List<String>> headers = (Map<String, List<String>>) invoke(API.headerMap, invoke(API.headers, response));
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            for (String value : header.getValue()) {
+                result.addHeader(header.getKey(), value);
+            }
+        }
+
+        InputStream body = (InputStream) invoke(API.body, response);
+        Header contentLength = result.getFirstHeader("Content-Length");
+        InputStreamEntity entity = new InputStreamEntity(body, contentLength == null ? -1 : Long.parseLong(contentLength.getValue()));
+        Header contentType = result.getFirstHeader("Content-Type");
+        if (contentType != null) {
+            entity.setContentType(contentType);
+        }
+        Header contentEncoding = result.getFirstHeader("Content-Encoding");
+        if (contentEncoding != null) {
+            entity.setContentEncoding(contentEncoding);
+        }
+        result.setEntity(entity);
+        return result;
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ConnectorIOException(cause.getMessage(), cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot call " + method + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Http2Transport{" +
+                "references=" + references +
+                ", http2Responses=" + http2Responses.get() +
+                ", http11Responses=" + http11Responses.get() +
+                '}';
+    }
+
+    /**
+     * Response with the body streamed from the JDK client, close releases the stream (and the HTTP/2 stream).
+     */
+    private static class StreamedResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+        StreamedResponse(BasicStatusLine statusLine) {
+            super(statusLine);
+        }
+
+        @Override
+        public void close() throws IOException {
+            HttpEntity entity = getEntity();
+            if (entity != null) {
+                entity.getContent().close();
+            }
+        }
+    }
+
+    /**
+     * Methods of java.net.http used by the transport, null when the JDK does not have them.
+     */
+    private static class Api {
+        Method newClientBuilder;
+        Method version;
+        Method sslContext;
+        Method connectTimeout;
+        Method proxy;
+        Method proxySelectorOf;
+        Method buildClient;
+        Method sendAsync;
+        Object http2;
+        Method newRequestBuilder;
+        Method method;
+        Method header;
+        Method timeout;
+        Method buildRequest;
+        Method noBody;
+        Method ofByteArray;
+        Method ofInputStream;
+        Method statusCode;
+        Method responseVersion;
+        Method headers;
+        Method headerMap;
+        Method body;
+
+        @SuppressWarnings("unchecked")
+        static Api find() {
+            try {
+                Class<?> client = Class.forName("java.net.http.HttpClient");
+                Class<?> clientBuilder = Class.forName("java.net.http.HttpClient$Builder");
+                Class<?> version = Class.forName("java.net.http.HttpClient$Version");
+                Class<?> request = Class.forName("java.net.http.HttpRequest");
+                Class<?> requestBuilder = Class.forName("java.net.http.HttpRequest$Builder");
+                Class<?> bodyPublisher = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+                Class<?> bodyPublishers = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+                Class<?> response = Class.forName("java.net.http.HttpResponse");
+                Class<?> bodyHandler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+                Class<?> bodyHandlers = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+                Class<?> headers = Class.forName("java.net.http.HttpHeaders");
+
+                Api api = new Api();
+                api.newClientBuilder = client.getMethod("newBuilder");
+                api.version = clientBuilder.getMethod("version", version);
+                api.sslContext = clientBuilder.getMethod("sslContext", javax.net.ssl.SSLContext.class);
+                api.connectTimeout = clientBuilder.getMethod("connectTimeout", Duration.class);
+                api.proxy = clientBuilder.getMethod("proxy", ProxySelector.class);
+                api.proxySelectorOf = ProxySelector.class.getMethod("of", InetSocketAddress.class);
+                api.buildClient = clientBuilder.getMethod("build");
+                api.sendAsync = client.getMethod("sendAsync", request, bodyHandler);
+                api.http2 = Enum.valueOf(version.asSubclass(Enum.class), "HTTP_2");
+                api.newRequestBuilder = request.getMethod("newBuilder", URI.class);
+                api.method = requestBuilder.getMethod("method", String.class, bodyPublisher);
+                api.header = requestBuilder.getMethod("header", String.class, String.class);
+                api.timeout = requestBuilder.getMethod("timeout", Duration.class);
+                api.buildRequest = requestBuilder.getMethod("build");
+                api.noBody = bodyPublishers.getMethod("noBody");
+                api.ofByteArray = bodyPublishers.getMethod("ofByteArray", byte[].class);
+                api.ofInputStream = bodyHandlers.getMethod("ofInputStream");
+                api.statusCode = response.getMethod("statusCode");
+                api.responseVersion = response.getMethod("version");
+                api.headers = response.getMethod("headers");
+                api.headerMap = headers.getMethod("map");
+                api.body = response.getMethod("body");
+                return api;
+            } catch (ClassNotFoundException e) {
+                return null;
+            } catch (NoSuchMethodException e) {
+                LOG.warn(e, "Unsupported java.net.http API: {0}", e.getMessage());
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
+import org.identityconnectors.framework.common.objects.Attribute;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Attributes of the create or update request indexed by name in one pass.
+ *
+ * @author gpalos
+ */
+public class IndexedAttributes {
+
+    private final Map<String, Attribute> attributes;
+
+    public IndexedAttributes(Set<Attribute> attributes) {
+        this.attributes = new HashMap<String, Attribute>(attributes.size() * 2);
+        for (Attribute attribute : attributes) {
+            this.attributes.put(attribute.getName(), attribute);
+        }
+    }
+
+    /**
+     * @return true, if the attribute is present, also without value
+     */
+    public boolean contains(String attrName) {
+        return attributes.containsKey(attrName);
+    }
+
+    public String getString(String attrName) {
+        return get(attrName, String.class);
+    }
+
+    public <T> T get(String attrName, Class<T> type) {
+        List<Object> values = getValues(attrName);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        if (values.size() > 1) {
+            throw new InvalidAttributeValueException("Multiple values for single valued attribute " + attrName);
+        }
+        Object value = values.get(0);
+        if (value == null) {
+            return null;
+        }
+        if (!type.isInstance(value)) {
+            throw new InvalidAttributeValueException("Unsupported type " + value.getClass() + " for attribute " + attrName);
+        }
+        return type.cast(value);
+    }
+
+    /**
+     * @return values or null, when the attribute is not present
+     */
+    public String[] getStrings(String attrName) {
+        List<Object> values = getValues(attrName);
+        if (values == null) {
+            return null;
+        }
+        String[] strings = new String[values.size()];
+        for (int i = 0; i < strings.length; i++) {
+            Object value = values.get(i);
+            strings[i] = value == null ? null : value.toString();
+        }
+        return strings;
+    }
+
+    /**
+     * @return clear text password or null, when not present
+     */
+    public String getPassword(String attrName) {
+        GuardedString guardedPassword = get(attrName, GuardedString.class);
+        if (guardedPassword == null) {
+            return null;
+        }
+        final StringBuilder password = new StringBuilder();
+        guardedPassword.access(new GuardedString.Accessor() {
+            @Override
+            public void access(char[] chars) {
+                password.append(chars);
+            }
+        });
+        return password.toString();
+    }
+
+    private List<Object> getValues(String attrName) {
+        Attribute attribute = attributes.get(attrName);
+        return attribute == null ? null : attribute.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedAttributes{" +
+                "names=" + attributes.keySet() +
+                '}';
+    }
+}
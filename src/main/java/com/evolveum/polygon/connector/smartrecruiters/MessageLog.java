@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.common.logging.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Debug (ok level) logging of request and response bodies and of the converted users.
+ * Bodies are converted to string, redacted and shortened only when the message is really logged,
+ * messages logged for every user are sampled.
+ *
+ * @author gpalos
+ */
+public class MessageLog {
+
+    private static final String REDACTED = "***";
+
+    private final Log log;
+
+    /**
+     * maximum logged body length in characters, 0 - not limited
+     */
+    private final int maxBodySize;
+
+    /**
+     * every n-th user message is logged, 0 - none
+     */
+    private final int userSampling;
+
+    /**
+     * values of these JSON fields are replaced, null - nothing to redact
+     */
+    private final Pattern redacted;
+
+    private final AtomicLong userMessages = new AtomicLong();
+
+    public MessageLog(Log log, int maxBodySize, int userSampling, String[] redactedFields) {
+        this.log = log;
+        this.maxBodySize = maxBodySize;
+        this.userSampling = userSampling;
+        this.redacted = compile(redactedFields);
+    }
+
+    private static Pattern compile(String[] fields) {
+        if (fields == null || fields.length == 0) {
+            return null;
+        }
+        StringBuilder names = new StringBuilder();
+        for (String field : fields) {
+            if (field == null || field.trim().isEmpty()) {
+                continue;
+            }
+            if (names.length() > 0) {
+                names.append('|');
+            }
+            names.append(Pattern.quote(field.trim()));
+        }
+        if (names.length() == 0) {
+            return null;
+        }
+        // "field" : "string value" or "field" : other value
+        return Pattern.compile("(\"(?:" + names + ")\"\\s*:\\s*)(\"(?:[^\"\\\\]|\\\\.)*\"|[^,}\\]\\s]+)");
+    }
+
+    public boolean isOk() {
+        return log.isOk();
+    }
+
+    /**
+     * Logs request or response body, body.toString() is called only when logged.
+     */
+    public void body(String message, Object body) {
+        if (log.isOk()) {
+            log.ok(message, new Body(body));
+        }
+    }
+
+    /**
+     * Logs message about one user, only every n-th message is logged.
+     */
+    public void user(String message, Object... args) {
+        if (!log.isOk() || userSampling <= 0) {
+            return;
+        }
+        if (userMessages.getAndIncrement() % userSampling != 0) {
+            return;
+        }
+        log.ok(message, args);
+    }
+
+    String format(Object body) {
+        if (body == null) {
+            return null;
+        }
+        String text = body.toString();
+        if (redacted != null) {
+            text = redacted.matcher(text).replaceAll("$1\"" + REDACTED + "\"");
+        }
+        if (maxBodySize > 0 && text.length() > maxBodySize) {
+            text = text.substring(0, maxBodySize) + "... (" + text.length() + " characters)";
+        }
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageLog{" +
+                "maxBodySize=" + maxBodySize +
+                ", userSampling=" + userSampling +
+                ", redacted=" + redacted +
+                '}';
+    }
+
+    /**
+     * Formatted lazily by the log message.
+     */
+    private class Body {
+        private final Object body;
+
+        Body(Object body) {
+            this.body = body;
+        }
+
+        @Override
+        public String toString() {
+            return format(body);
+        }
+    }
+}
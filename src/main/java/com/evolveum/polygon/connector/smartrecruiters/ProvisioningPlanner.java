@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.json.JSONObject;
+
+/**
+ * Computes the smallest sequence of activation requests for create and update
+ * from the requested administrative status and the known current state of the user.
+ *
+ * @author gpalos
+ */
+public class ProvisioningPlanner {
+
+    public enum Activation {
+        /**
+         * PUT /{id}/activation
+         */
+        ACTIVATE,
+        /**
+         * DELETE /{id}/activation
+         */
+        DEACTIVATE,
+        /**
+         * no request needed
+         */
+        NONE
+    }
+
+    /**
+     * New user is enabled only when it is explicitly requested.
+     *
+     * @param enable  requested administrative status, null when not set
+     * @param created response of the POST, its active field is the current state
+     */
+    public static Activation planCreate(Boolean enable, JSONObject created) {
+        boolean requested = enable != null && enable;
+        return plan(requested, currentState(created));
+    }
+
+    /**
+     * @param enable  requested administrative status, null when not changed
+     * @param current user after the PATCH or null, when nothing was patched
+     */
+    public static Activation planUpdate(Boolean enable, JSONObject current) {
+        if (enable == null) {
+            return Activation.NONE;
+        }
+        return plan(enable, currentState(current));
+    }
+
+    private static Activation plan(boolean requested, Boolean current) {
+        if (current != null && current == requested) {
+            // already in requested state
+            return Activation.NONE;
+        }
+        return requested ? Activation.ACTIVATE : Activation.DEACTIVATE;
+    }
+
+    /**
+     * @return active field of the user or null, when not known
+     */
+    private static Boolean currentState(JSONObject user) {
+        if (user == null || !user.has(SmartRecruitersConnector.ATTR_ACTIVE) || user.isNull(SmartRecruitersConnector.ATTR_ACTIVE)) {
+            return null;
+        }
+        return user.getBoolean(SmartRecruitersConnector.ATTR_ACTIVE);
+    }
+}
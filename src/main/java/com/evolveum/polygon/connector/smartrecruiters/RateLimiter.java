@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.DateUtils;
+import org.identityconnectors.common.logging.Log;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side token bucket shared by all connector instances of the same service address (API quota is per tenant).
+ * Requests are also paused after the server reports throttling (429 + Retry-After) or exhausted rate limit.
+ *
+ * @author gpalos
+ */
+public class RateLimiter {
+
+    private static final Log LOG = Log.getLog(RateLimiter.class);
+
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+    private static final String HEADER_RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+    private static final String HEADER_RATE_LIMIT_RESET = "X-RateLimit-Reset";
+
+    /**
+     * wait when 429 has no Retry-After header
+     */
+    private static final long DEFAULT_THROTTLING_WAIT = 1000;
+
+    private static final Map<String, RateLimiter> LIMITERS = new HashMap<String, RateLimiter>();
+
+    private double permitsPerSecond;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private long pausedUntil = System.nanoTime();
+
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong waitMillis = new AtomicLong();
+
+    RateLimiter(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.tokens = capacity();
+    }
+
+    /**
+     * @param permitsPerSecond requests per second, 0 - no client side limit, only server throttling is respected
+     */
+    public static RateLimiter getInstance(String serviceAddress, double permitsPerSecond) {
+        synchronized (LIMITERS) {
+            RateLimiter limiter = LIMITERS.get(serviceAddress);
+            if (limiter == null) {
+                limiter = new RateLimiter(permitsPerSecond);
+                LIMITERS.put(serviceAddress, limiter);
+            } else {
+                limiter.setRate(permitsPerSecond);
+            }
+            return limiter;
+        }
+    }
+
+    /**
+     * Waits until the request can be sent.
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) {
+            waitMillis.addAndGet(TimeUnit.NANOSECONDS.toMillis(wait));
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Pauses all requests after server throttling.
+     *
+     * @return how long to wait before next attempt in milliseconds
+     */
+    public long throttled(HttpResponse response) {
+        throttled.incrementAndGet();
+        long wait = retryAfter(response);
+        if (wait < 0) {
+            wait = DEFAULT_THROTTLING_WAIT;
+        }
+        pause(wait);
+        LOG.info("Request throttled by SmartRecruiters (429), waiting {0} ms", wait);
+        return wait;
+    }
+
+    /**
+     * Pauses requests when the server reports exhausted rate limit.
+     */
+    public void update(HttpResponse response) {
+        Header remaining = response.getFirstHeader(HEADER_RATE_LIMIT_REMAINING);
+        if (remaining == null) {
+            return;
+        }
+        try {
+            if (Long.parseLong(remaining.getValue().trim()) > 0) {
+                return;
+            }
+        } catch (NumberFormatException e) {
+            return;
+        }
+        long wait = resetAfter(response);
+        if (wait > 0) {
+            LOG.ok("Rate limit exhausted, pausing requests for {0} ms", wait);
+            pause(wait);
+        }
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public long getWaitMillis() {
+        return waitMillis.get();
+    }
+
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        long wait = 0;
+        if (permitsPerSecond > 0) {
+            tokens = Math.min(capacity(), tokens + (now - lastRefill) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+            tokens -= 1;
+            if (tokens < 0) {
+                wait = (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+            }
+        }
+        return Math.max(wait, pausedUntil - now);
+    }
+
+    private synchronized void pause(long millis) {
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+    }
+
+    private synchronized void setRate(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.tokens = Math.min(tokens, capacity());
+    }
+
+    private double capacity() {
+        // allow burst of one second
+        return Math.max(1, permitsPerSecond);
+    }
+
+    /**
+     * @return Retry-After in milliseconds (delay in seconds or HTTP date), -1 if not present
+     */
+    private long retryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader(HEADER_RETRY_AFTER);
+        if (header == null) {
+            return resetAfter(response);
+        }
+        String value = header.getValue().trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            if (date != null) {
+                return Math.max(0, date.getTime() - System.currentTimeMillis());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return X-RateLimit-Reset in milliseconds (epoch seconds or delay in seconds), -1 if not present
+     */
+    private long resetAfter(HttpResponse response) {
+        Header header = response.getFirstHeader(HEADER_RATE_LIMIT_RESET);
+        if (header == null) {
+            return -1;
+        }
+        try {
+            long reset = Long.parseLong(header.getValue().trim());
+            if (reset > 1000000000L) {
+                // epoch seconds
+                return Math.max(0, TimeUnit.SECONDS.toMillis(reset) - System.currentTimeMillis());
+            }
+            return TimeUnit.SECONDS.toMillis(reset);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter{" +
+                "permitsPerSecond=" + permitsPerSecond +
+                ", throttled=" + throttled +
+                ", waitMillis=" + waitMillis +
+                '}';
+    }
+}
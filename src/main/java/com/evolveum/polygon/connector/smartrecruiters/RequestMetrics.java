@@ -0,0 +1,305 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.identityconnectors.common.logging.Log;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Requests, latency, transferred bytes and status codes per endpoint and HTTP method, shared by all connector
+ * instances of the same service address. Listing records also time spent in the handler versus time spent
+ * reading pages from SmartRecruiters.
+ *
+ * @author gpalos
+ */
+public class RequestMetrics {
+
+    private static final Log LOG = Log.getLog(RequestMetrics.class);
+
+    private static final Map<String, RequestMetrics> METRICS = new HashMap<String, RequestMetrics>();
+
+    /**
+     * upper bounds of latency histogram buckets in milliseconds, last bucket is unbounded
+     */
+    private static final long[] LATENCY_BUCKETS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final ConcurrentMap<String, Statistics> statistics = new ConcurrentHashMap<String, Statistics>();
+
+    private final AtomicLong listNetworkNanos = new AtomicLong();
+    private final AtomicLong listHandlerNanos = new AtomicLong();
+
+    private volatile long logIntervalMillis;
+    private final AtomicLong lastLogged = new AtomicLong(System.currentTimeMillis());
+
+    RequestMetrics(long logIntervalMillis) {
+        this.logIntervalMillis = logIntervalMillis;
+    }
+
+    public static RequestMetrics getInstance(String serviceAddress, long logIntervalMillis) {
+        synchronized (METRICS) {
+            RequestMetrics metrics = METRICS.get(serviceAddress);
+            if (metrics == null) {
+                metrics = new RequestMetrics(logIntervalMillis);
+                METRICS.put(serviceAddress, metrics);
+            } else {
+                metrics.logIntervalMillis = logIntervalMillis;
+            }
+            return metrics;
+        }
+    }
+
+    /**
+     * Response received, latency is measured until the response headers are read.
+     */
+    public void response(Endpoint endpoint, String method, long nanos, int statusCode, long bytesOut) {
+        Statistics s = get(endpoint, method);
+        s.record(nanos, bytesOut);
+        AtomicLong count = s.statusCodes.get(statusCode);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = s.statusCodes.putIfAbsent(statusCode, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+        logPeriodically();
+    }
+
+    /**
+     * Request failed without response (I/O error).
+     */
+    public void failure(Endpoint endpoint, String method, long nanos, long bytesOut) {
+        Statistics s = get(endpoint, method);
+        s.record(nanos, bytesOut);
+        s.failures.incrementAndGet();
+        logPeriodically();
+    }
+
+    /**
+     * @return response entity counting the read bytes (as received, compressed when the response is compressed)
+     * to the endpoint
+     */
+    public HttpEntity countBytesIn(Endpoint endpoint, String method, HttpEntity entity) {
+        if (entity == null) {
+            return null;
+        }
+        return new CountingEntity(entity, get(endpoint, method).bytesIn);
+    }
+
+    /**
+     * @return decoded response entity counting the read uncompressed bytes to the endpoint
+     */
+    public HttpEntity countBytesInUncompressed(Endpoint endpoint, String method, HttpEntity entity) {
+        if (entity == null) {
+            return null;
+        }
+        return new CountingEntity(entity, get(endpoint, method).bytesInUncompressed);
+    }
+
+    /**
+     * Time to read list page (network and parsing), without the results handler.
+     */
+    public void pageRead(long nanos) {
+        listNetworkNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Time spent in the results handler (including detail reads) for a list page.
+     */
+    public void pageHandled(long nanos) {
+        listHandlerNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return counters with keys endpoint.method.name, times in milliseconds
+     */
+    public Map<String, Long> getSnapshot() {
+        Map<String, Long> snapshot = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Statistics> entry : new TreeMap<String, Statistics>(statistics).entrySet()) {
+            entry.getValue().snapshot(entry.getKey() + ".", snapshot);
+        }
+        snapshot.put("listing.networkMs", TimeUnit.NANOSECONDS.toMillis(listNetworkNanos.get()));
+        snapshot.put("listing.handlerMs", TimeUnit.NANOSECONDS.toMillis(listHandlerNanos.get()));
+        return snapshot;
+    }
+
+    /**
+     * @return one line per endpoint and method
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Statistics> entry : new TreeMap<String, Statistics>(statistics).entrySet()) {
+            Statistics s = entry.getValue();
+            long requests = s.requests.get();
+            summary.append("\n\t").append(entry.getKey())
+                    .append(": requests=").append(requests)
+                    .append(", failures=").append(s.failures.get())
+                    .append(", avgMs=").append(requests == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(s.totalNanos.get()) / requests)
+                    .append(", maxMs=").append(TimeUnit.NANOSECONDS.toMillis(s.maxNanos.get()))
+                    .append(", p95Ms<=").append(s.percentile(0.95))
+                    .append(", bytesIn=").append(s.bytesIn.get())
+                    .append(", bytesInUncompressed=").append(s.bytesInUncompressed.get())
+                    .append(", bytesOut=").append(s.bytesOut.get())
+                    .append(", status=").append(new TreeMap<Integer, AtomicLong>(s.statusCodes));
+        }
+        summary.append("\n\tlisting: networkMs=").append(TimeUnit.NANOSECONDS.toMillis(listNetworkNanos.get()))
+                .append(", handlerMs=").append(TimeUnit.NANOSECONDS.toMillis(listHandlerNanos.get()));
+        return summary.toString();
+    }
+
+    private void logPeriodically() {
+        if (logIntervalMillis <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long last = lastLogged.get();
+        // only one thread logs the summary
+        if (now - last >= logIntervalMillis && lastLogged.compareAndSet(last, now)) {
+            LOG.info("SmartRecruiters request metrics: {0}", getSummary());
+        }
+    }
+
+    private Statistics get(Endpoint endpoint, String method) {
+        String key = endpoint.name().toLowerCase() + "." + method;
+        Statistics s = statistics.get(key);
+        if (s == null) {
+            Statistics created = new Statistics();
+            s = statistics.putIfAbsent(key, created);
+            if (s == null) {
+                s = created;
+            }
+        }
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestMetrics{" + getSummary() + "\n}";
+    }
+
+    private static class Statistics {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray latency = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+        private final AtomicLong bytesIn = new AtomicLong();
+        private final AtomicLong bytesInUncompressed = new AtomicLong();
+        private final AtomicLong bytesOut = new AtomicLong();
+        private final ConcurrentMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+
+        private void record(long nanos, long bytes) {
+            requests.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS.length && millis > LATENCY_BUCKETS[bucket]) {
+                bucket++;
+            }
+            latency.incrementAndGet(bucket);
+            if (bytes > 0) {
+                bytesOut.addAndGet(bytes);
+            }
+        }
+
+        /**
+         * @return upper bound of the bucket containing the percentile, -1 when above the last bound
+         */
+        private long percentile(double percentile) {
+            long total = 0;
+            for (int i = 0; i < latency.length(); i++) {
+                total += latency.get(i);
+            }
+            long limit = (long) Math.ceil(total * percentile);
+            long sum = 0;
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                sum += latency.get(i);
+                if (sum >= limit) {
+                    return LATENCY_BUCKETS[i];
+                }
+            }
+            return -1;
+        }
+
+        private void snapshot(String prefix, Map<String, Long> snapshot) {
+            snapshot.put(prefix + "requests", requests.get());
+            snapshot.put(prefix + "failures", failures.get());
+            snapshot.put(prefix + "latencyTotalMs", TimeUnit.NANOSECONDS.toMillis(totalNanos.get()));
+            snapshot.put(prefix + "latencyMaxMs", TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                snapshot.put(prefix + "latency.le" + LATENCY_BUCKETS[i] + "ms", latency.get(i));
+            }
+            snapshot.put(prefix + "latency.over" + LATENCY_BUCKETS[LATENCY_BUCKETS.length - 1] + "ms", latency.get(LATENCY_BUCKETS.length));
+            snapshot.put(prefix + "bytesIn", bytesIn.get());
+            snapshot.put(prefix + "bytesInUncompressed", bytesInUncompressed.get());
+            snapshot.put(prefix + "bytesOut", bytesOut.get());
+            for (Map.Entry<Integer, AtomicLong> status : new TreeMap<Integer, AtomicLong>(statusCodes).entrySet()) {
+                snapshot.put(prefix + "status." + status.getKey(), status.getValue().get());
+            }
+        }
+    }
+
+    private static class CountingEntity extends HttpEntityWrapper {
+        private final AtomicLong counter;
+
+        CountingEntity(HttpEntity entity, AtomicLong counter) {
+            super(entity);
+            this.counter = counter;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        counter.incrementAndGet();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    if (read > 0) {
+                        counter.addAndGet(read);
+                    }
+                    return read;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+
+import java.util.Locale;
+
+/**
+ * Negotiated gzip/deflate compression of responses. Body is decompressed while it is read, so the JSON parser
+ * reads list pages directly from the compressed stream without buffering the whole response.
+ *
+ * @author gpalos
+ */
+public final class ResponseCompression {
+
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+
+    /**
+     * Encodings sent in Accept-Encoding, in order of preference.
+     */
+    public static final String SUPPORTED_ENCODINGS = "gzip, deflate";
+
+    private ResponseCompression() {
+    }
+
+    /**
+     * @return true, if the entity is compressed with supported encoding
+     */
+    public static boolean isCompressed(HttpEntity entity) {
+        return encoding(entity) != null;
+    }
+
+    /**
+     * @return entity decompressing the content while it is read, or the same entity when it is not compressed
+     */
+    public static HttpEntity decode(HttpEntity entity) {
+        String encoding = encoding(entity);
+        if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+            return new GzipDecompressingEntity(entity);
+        }
+        if ("deflate".equals(encoding)) {
+            return new DeflateDecompressingEntity(entity);
+        }
+        return entity;
+    }
+
+    private static String encoding(HttpEntity entity) {
+        Header header = entity == null ? null : entity.getContentEncoding();
+        if (header == null || header.getValue() == null) {
+            return null;
+        }
+        String encoding = header.getValue().trim().toLowerCase(Locale.ENGLISH);
+        if ("gzip".equals(encoding) || "x-gzip".equals(encoding) || "deflate".equals(encoding)) {
+            return encoding;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retry of idempotent requests after I/O errors and 5xx responses with exponential backoff and full jitter,
+ * every endpoint has own {@link CircuitBreaker}.
+ *
+ * @author gpalos
+ */
+public class RetryPolicy {
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    private final Map<Endpoint, CircuitBreaker> circuitBreakers = new EnumMap<Endpoint, CircuitBreaker>(Endpoint.class);
+
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+
+    public RetryPolicy(SmartRecruitersConfiguration configuration) {
+        this.maxRetries = configuration.getMaxRetries();
+        this.baseDelayMillis = configuration.getRetryBaseDelay();
+        this.maxDelayMillis = configuration.getRetryMaxDelay();
+        for (Endpoint endpoint : Endpoint.values()) {
+            circuitBreakers.put(endpoint, CircuitBreaker.getInstance(configuration.getServiceAddress(), endpoint,
+                    configuration.getCircuitBreakerThreshold(), configuration.getCircuitBreakerOpenTime() * 1000L));
+        }
+    }
+
+    public CircuitBreaker getCircuitBreaker(Endpoint endpoint) {
+        return circuitBreakers.get(endpoint);
+    }
+
+    /**
+     * @param attempt number of already failed attempts (1 after the first failure)
+     * @return true, if the request can be repeated
+     */
+    public boolean canRetry(int attempt) {
+        if (attempt > maxRetries) {
+            exhausted.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits before next attempt, random delay between 0 and min(maxDelay, baseDelay * 2^(attempt-1)).
+     */
+    public void backoff(int attempt) throws InterruptedException {
+        retries.incrementAndGet();
+        long ceiling = baseDelayMillis << Math.min(attempt - 1, 20);
+        if (ceiling <= 0 || ceiling > maxDelayMillis) {
+            ceiling = maxDelayMillis;
+        }
+        if (ceiling > 0) {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        }
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getExhausted() {
+        return exhausted.get();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+        statistics.put("retries", getRetries());
+        statistics.put("retriesExhausted", getExhausted());
+        for (Map.Entry<Endpoint, CircuitBreaker> entry : circuitBreakers.entrySet()) {
+            String prefix = "circuitBreaker." + entry.getKey().name().toLowerCase() + ".";
+            statistics.put(prefix + "state", entry.getValue().getState().name());
+            statistics.put(prefix + "opened", entry.getValue().getOpened());
+            statistics.put(prefix + "rejected", entry.getValue().getRejected());
+        }
+        return statistics;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" +
+                "maxRetries=" + maxRetries +
+                ", retries=" + retries +
+                ", exhausted=" + exhausted +
+                ", circuitBreakers=" + circuitBreakers.values() +
+                '}';
+    }
+}
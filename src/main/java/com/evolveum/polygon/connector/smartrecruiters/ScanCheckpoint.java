@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.common.logging.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Progress of listing all users stored in a local file, so a failed or interrupted scan continues after the last
+ * completed page instead of the first page. Pages can complete out of order (parallel reading), the checkpoint
+ * moves only over the pages completed without a gap. Users of a page which was not completed are listed again.
+ * Every scan id given by the caller has its own file, concurrent scans don't share the progress.
+ *
+ * @author gpalos
+ */
+public class ScanCheckpoint {
+
+    private static final Log LOG = Log.getLog(ScanCheckpoint.class);
+
+    private static final String SCAN_ID = "scanId";
+    private static final String SERVICE_ADDRESS = "serviceAddress";
+    private static final String PAGE_SIZE = "pageSize";
+    private static final String LAST_COMPLETED_OFFSET = "lastCompletedOffset";
+    private static final String UPDATED = "updated";
+
+    private final File file;
+    private final String serviceAddress;
+    private final int pageSize;
+    private final String scanId;
+    private final int firstPage;
+
+    private int lastCompletedPage;
+    private final TreeSet<Integer> completedAhead = new TreeSet<Integer>();
+
+    private ScanCheckpoint(File file, String serviceAddress, int pageSize, String scanId, int lastCompletedPage) {
+        this.file = file;
+        this.serviceAddress = serviceAddress;
+        this.pageSize = pageSize;
+        this.scanId = scanId;
+        this.lastCompletedPage = lastCompletedPage;
+        this.firstPage = lastCompletedPage + 1;
+    }
+
+    /**
+     * Continues the scan with the id stored in the directory, when its checkpoint is not older than TTL and was made
+     * with the same page size, otherwise starts a new scan with the id.
+     */
+    public static ScanCheckpoint open(String directory, String serviceAddress, String scanId, int pageSize, long ttlMillis) {
+        File file = new File(directory, "smartrecruiters-scan-" + sha256(serviceAddress + "|" + scanId) + ".properties");
+        if (file.isFile()) {
+            Properties properties = new Properties();
+            try {
+                InputStream in = new FileInputStream(file);
+                try {
+                    properties.load(in);
+                } finally {
+                    in.close();
+                }
+                long updated = Long.parseLong(properties.getProperty(UPDATED));
+                int storedPageSize = Integer.parseInt(properties.getProperty(PAGE_SIZE));
+                int lastCompletedOffset = Integer.parseInt(properties.getProperty(LAST_COMPLETED_OFFSET));
+                if (ttlMillis > 0 && System.currentTimeMillis() - updated > ttlMillis) {
+                    LOG.info("Scan checkpoint {0} expired, starting new scan", file);
+                } else if (storedPageSize != pageSize || !serviceAddress.equals(properties.getProperty(SERVICE_ADDRESS))
+                        || !scanId.equals(properties.getProperty(SCAN_ID))) {
+                    LOG.info("Scan checkpoint {0} was made for other page size, service or scan, starting new scan", file);
+                } else {
+                    ScanCheckpoint checkpoint = new ScanCheckpoint(file, serviceAddress, pageSize, scanId, lastCompletedOffset / pageSize);
+                    LOG.info("Resuming scan {0} after offset {1}", checkpoint.scanId, lastCompletedOffset);
+                    return checkpoint;
+                }
+            } catch (IOException e) {
+                LOG.warn(e, "Cannot read scan checkpoint {0}, starting new scan: {1}", file, e.getMessage());
+            } catch (RuntimeException e) {
+                // missing or malformed value
+                LOG.warn(e, "Invalid scan checkpoint {0}, starting new scan: {1}", file, e.getMessage());
+            }
+            delete(file);
+        }
+        ScanCheckpoint checkpoint = new ScanCheckpoint(file, serviceAddress, pageSize, scanId, -1);
+        LOG.ok("Starting scan {0}, checkpoint {1}", checkpoint.scanId, file);
+        return checkpoint;
+    }
+
+    public String getScanId() {
+        return scanId;
+    }
+
+    /**
+     * @return first page to read, 0 for a new scan
+     */
+    public int getFirstPage() {
+        return firstPage;
+    }
+
+    public boolean isResumed() {
+        return firstPage > 0;
+    }
+
+    /**
+     * All users of the page were passed to the handler, checkpoint is stored when it moved.
+     */
+    public synchronized void pageCompleted(int page) {
+        if (page <= lastCompletedPage) {
+            return;
+        }
+        completedAhead.add(page);
+        int last = lastCompletedPage;
+        while (!completedAhead.isEmpty() && completedAhead.first() == last + 1) {
+            last = completedAhead.pollFirst();
+        }
+        if (last != lastCompletedPage) {
+            lastCompletedPage = last;
+            store();
+        }
+    }
+
+    /**
+     * Scan finished (or was stopped by the handler), nothing to resume.
+     */
+    public void completed() {
+        LOG.ok("Scan {0} completed", scanId);
+        delete(file);
+    }
+
+    private void store() {
+        Properties properties = new Properties();
+        properties.setProperty(SCAN_ID, scanId);
+        properties.setProperty(SERVICE_ADDRESS, serviceAddress);
+        properties.setProperty(PAGE_SIZE, String.valueOf(pageSize));
+        properties.setProperty(LAST_COMPLETED_OFFSET, String.valueOf(lastCompletedPage * pageSize));
+        properties.setProperty(UPDATED, String.valueOf(System.currentTimeMillis()));
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                properties.store(out, "SmartRecruiters connector scan checkpoint");
+            } finally {
+                out.close();
+            }
+            // readers never see a partially written checkpoint
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // scan continues, only resume is not possible
+            LOG.warn(e, "Cannot store scan checkpoint {0}: {1}", file, e.getMessage());
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            LOG.warn("Cannot delete scan checkpoint {0}", file);
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return new BigInteger(1, digest.digest(value.getBytes("UTF-8"))).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ScanCheckpoint{" +
+                "scanId=" + scanId +
+                ", firstPage=" + firstPage +
+                ", lastCompletedPage=" + lastCompletedPage +
+                ", file=" + file +
+                '}';
+    }
+}
@@ -0,0 +1,406 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContextBuilder;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.exceptions.ConfigurationException;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP client with pooled connections shared by all connector instances with the same service address and credentials,
+ * so connections (and TLS sessions) are reused across pooled connector instances.
+ *
+ * @author gpalos
+ */
+public class SharedConnectionPool implements Transport {
+
+    private static final Log LOG = Log.getLog(SharedConnectionPool.class);
+
+    private static final String AUTH_BASIC = "BASIC";
+    private static final String AUTH_TOKEN = "TOKEN";
+
+    /**
+     * optional connector-rest properties, not all connector-rest versions have them
+     */
+    static final String PROPERTY_PROXY = "proxy";
+    static final String PROPERTY_PROXY_PORT = "proxyPort";
+    static final String PROPERTY_CONNECT_TIMEOUT = "connectTimeout";
+    static final String PROPERTY_SOCKET_TIMEOUT = "socketTimeout";
+
+    private static final Map<String, SharedConnectionPool> POOLS = new HashMap<String, SharedConnectionPool>();
+
+    private final String key;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final String tokenName;
+    private final GuardedString tokenValue;
+    private int references;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong waitingRequests = new AtomicLong();
+    private final AtomicLong leaseWaitMillis = new AtomicLong();
+    private final AtomicLong maxLeaseWaitMillis = new AtomicLong();
+    private final AtomicLong maxPending = new AtomicLong();
+
+    private SharedConnectionPool(String key, SmartRecruitersConfiguration configuration) {
+        this.key = key;
+        this.connectionManager = new LeaseTimingConnectionManager(createSocketFactoryRegistry(configuration), configuration.getConnectionTimeToLive());
+        connectionManager.setMaxTotal(configuration.getMaxConnectionsTotal());
+        connectionManager.setDefaultMaxPerRoute(configuration.getMaxConnectionsPerRoute());
+
+        HttpClientBuilder clientBuilder = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(createKeepAliveStrategy(configuration))
+                .setDefaultRequestConfig(createRequestConfig(configuration))
+                .evictExpiredConnections()
+                .evictIdleConnections((long) configuration.getIdleConnectionTimeout(), TimeUnit.SECONDS);
+
+        HttpHost proxy = createProxy(configuration);
+        if (proxy != null) {
+            clientBuilder.setRoutePlanner(new DefaultProxyRoutePlanner(proxy));
+        }
+
+        if (configuration.getResponseCompression()) {
+            // compressed responses are decoded (and measured) by the connector
+            clientBuilder.disableContentCompression();
+        }
+        if (AUTH_BASIC.equals(configuration.getAuthMethod())) {
+            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(AuthScope.ANY,
+                    new UsernamePasswordCredentials(configuration.getUsername(), reveal(configuration.getPassword())));
+            clientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+        }
+        if (AUTH_TOKEN.equals(configuration.getAuthMethod())) {
+            this.tokenName = configuration.getTokenName();
+            this.tokenValue = configuration.getTokenValue();
+        } else {
+            this.tokenName = null;
+            this.tokenValue = null;
+        }
+
+        this.httpClient = clientBuilder.build();
+    }
+
+    /**
+     * Returns pool for the configuration, every acquire has to be followed by {@link #release()}.
+     */
+    public static SharedConnectionPool acquire(SmartRecruitersConfiguration configuration) {
+        String key = createKey(configuration);
+        synchronized (POOLS) {
+            SharedConnectionPool pool = POOLS.get(key);
+            if (pool == null) {
+                pool = new SharedConnectionPool(key, configuration);
+                POOLS.put(key, pool);
+                LOG.ok("created shared connection pool for {0}", configuration.getServiceAddress());
+            }
+            pool.references++;
+            return pool;
+        }
+    }
+
+    /**
+     * Closes the pool when the last connector instance released it.
+     */
+    @Override
+    public void release() {
+        synchronized (POOLS) {
+            references--;
+            if (references > 0) {
+                return;
+            }
+            POOLS.remove(key);
+        }
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            LOG.warn(e, "Error when closing shared connection pool: {0}", e.getMessage());
+        }
+    }
+
+    @Override
+    public CloseableHttpResponse send(HttpRequestBase request) throws IOException {
+        requests.incrementAndGet();
+        if (tokenName != null && tokenValue != null) {
+            request.setHeader(tokenName, reveal(tokenValue));
+        }
+        return httpClient.execute(request);
+    }
+
+    /**
+     * @return connections leased, available and max, requests waiting for a connection now (pending),
+     * maximum pending requests seen, number of requests which had to wait for a lease and how long they waited
+     */
+    public Map<String, Long> getStatistics() {
+        PoolStats stats = connectionManager.getTotalStats();
+        Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+        statistics.put("leased", (long) stats.getLeased());
+        statistics.put("available", (long) stats.getAvailable());
+        statistics.put("pending", (long) stats.getPending());
+        statistics.put("max", (long) stats.getMax());
+        statistics.put("maxPending", maxPending.get());
+        statistics.put("requests", requests.get());
+        statistics.put("waitingRequests", waitingRequests.get());
+        statistics.put("leaseWaitMillis", leaseWaitMillis.get());
+        statistics.put("maxLeaseWaitMillis", maxLeaseWaitMillis.get());
+        return statistics;
+    }
+
+    private void leased(long waitNanos) {
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+        if (waitMillis == 0) {
+            // connection was free
+            return;
+        }
+        waitingRequests.incrementAndGet();
+        leaseWaitMillis.addAndGet(waitMillis);
+        long max = maxLeaseWaitMillis.get();
+        while (waitMillis > max && !maxLeaseWaitMillis.compareAndSet(max, waitMillis)) {
+            max = maxLeaseWaitMillis.get();
+        }
+    }
+
+    private void pending(long pending) {
+        long max = maxPending.get();
+        while (pending > max && !maxPending.compareAndSet(max, pending)) {
+            max = maxPending.get();
+        }
+    }
+
+    /**
+     * Measures how long requests wait for a connection lease from the pool.
+     */
+    private class LeaseTimingConnectionManager extends PoolingHttpClientConnectionManager {
+
+        LeaseTimingConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry, long timeToLive) {
+            super(socketFactoryRegistry, null, null, null, timeToLive, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final ConnectionRequest request = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit unit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        return request.get(timeout, unit);
+                    } finally {
+                        leased(System.nanoTime() - start);
+                        pending(getTotalStats().getPending());
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+    }
+
+    private static Registry<ConnectionSocketFactory> createSocketFactoryRegistry(SmartRecruitersConfiguration configuration) {
+        SSLConnectionSocketFactory sslSocketFactory;
+        if (Boolean.TRUE.equals(configuration.getTrustAllCertificates())) {
+            sslSocketFactory = new SSLConnectionSocketFactory(createTrustAllSslContext(), NoopHostnameVerifier.INSTANCE);
+        } else {
+            sslSocketFactory = SSLConnectionSocketFactory.getSocketFactory();
+        }
+        return RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslSocketFactory)
+                .build();
+    }
+
+    static SSLContext createTrustAllSslContext() {
+        try {
+            return new SSLContextBuilder().loadTrustMaterial(null, new TrustStrategy() {
+                @Override
+                public boolean isTrusted(X509Certificate[] chain, String authType) {
+                    return true;
+                }
+            }).build();
+        } catch (GeneralSecurityException e) {
+            throw new ConfigurationException("Cannot create SSL context trusting all certificates: " + e.getMessage(), e);
+        }
+    }
+
+    static ConnectionKeepAliveStrategy createKeepAliveStrategy(SmartRecruitersConfiguration configuration) {
+        final long keepAliveMillis = TimeUnit.SECONDS.toMillis(configuration.getConnectionTimeToLive());
+        return new ConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                // server keep-alive, but not longer than configured TTL
+                long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return keepAlive > 0 && keepAlive < keepAliveMillis ? keepAlive : keepAliveMillis;
+            }
+        };
+    }
+
+    /**
+     * Connect and socket timeouts (milliseconds) of the connector-rest configuration, when it has them.
+     */
+    static RequestConfig createRequestConfig(SmartRecruitersConfiguration configuration) {
+        RequestConfig.Builder builder = RequestConfig.custom();
+        Integer connectTimeout = getTimeout(configuration, PROPERTY_CONNECT_TIMEOUT);
+        if (connectTimeout != null) {
+            builder.setConnectTimeout(connectTimeout);
+        }
+        Integer socketTimeout = getTimeout(configuration, PROPERTY_SOCKET_TIMEOUT);
+        if (socketTimeout != null) {
+            builder.setSocketTimeout(socketTimeout);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return proxy of the connector-rest configuration, null if not configured
+     */
+    static HttpHost createProxy(SmartRecruitersConfiguration configuration) {
+        Object proxy = getRestProperty(configuration, PROPERTY_PROXY);
+        if (proxy == null || StringUtil.isBlank(proxy.toString())) {
+            return null;
+        }
+        Object port = getRestProperty(configuration, PROPERTY_PROXY_PORT);
+        return new HttpHost(proxy.toString().trim(), port instanceof Number ? ((Number) port).intValue() : -1);
+    }
+
+    /**
+     * @return positive timeout in milliseconds, null when not configured
+     */
+    static Integer getTimeout(SmartRecruitersConfiguration configuration, String name) {
+        Object timeout = getRestProperty(configuration, name);
+        if (timeout instanceof Number && ((Number) timeout).intValue() > 0) {
+            return ((Number) timeout).intValue();
+        }
+        return null;
+    }
+
+    /**
+     * @return value of the configuration property, null when this connector-rest version does not have it
+     */
+    static Object getRestProperty(SmartRecruitersConfiguration configuration, String name) {
+        Method getter;
+        try {
+            getter = configuration.getClass().getMethod("get" + Character.toUpperCase(name.charAt(0)) + name.substring(1));
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        try {
+            return getter.invoke(configuration);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Pool key - service address, authentication and hash of the secret (secret itself is not kept in the key),
+     * proxy, timeouts and pool sizing, configurations with other sizing don't share the pool.
+     */
+    static String createKey(SmartRecruitersConfiguration configuration) {
+        String secret = AUTH_TOKEN.equals(configuration.getAuthMethod()) ? reveal(configuration.getTokenValue()) : reveal(configuration.getPassword());
+        return configuration.getServiceAddress() + "|" + configuration.getAuthMethod() + "|" + configuration.getUsername()
+                + "|" + configuration.getTokenName() + "|" + sha256(secret) + "|" + configuration.getTrustAllCertificates() + "|" + configuration.getResponseCompression()
+                + "|" + createProxy(configuration) + "|" + getTimeout(configuration, PROPERTY_CONNECT_TIMEOUT) + "|" + getTimeout(configuration, PROPERTY_SOCKET_TIMEOUT)
+                + "|" + configuration.getMaxConnectionsPerRoute() + "|" + configuration.getMaxConnectionsTotal()
+                + "|" + configuration.getConnectionTimeToLive() + "|" + configuration.getIdleConnectionTimeout();
+    }
+
+    static String reveal(GuardedString guardedString) {
+        if (guardedString == null) {
+            return null;
+        }
+        final StringBuilder value = new StringBuilder();
+        guardedString.access(new GuardedString.Accessor() {
+            @Override
+            public void access(char[] chars) {
+                value.append(chars);
+            }
+        });
+        return value.toString();
+    }
+
+    private static String sha256(String value) {
+        if (value == null) {
+            return "";
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return new BigInteger(1, digest.digest(value.getBytes("UTF-8"))).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SharedConnectionPool{" +
+                "references=" + references +
+                ", statistics=" + getStatistics() +
+                '}';
+    }
+}
@@ -18,16 +18,88 @@ package com.evolveum.polygon.connector.smartrecruiters;
 import com.evolveum.polygon.rest.AbstractRestConfiguration;
 import org.identityconnectors.framework.spi.ConfigurationProperty;
 
+import java.util.Arrays;
+
 /**
  * @author gpalos
  *
  */
 public class SmartRecruitersConfiguration extends AbstractRestConfiguration {
 
+    public static final String TRANSPORT_BLOCKING = "blocking";
+    public static final String TRANSPORT_ASYNC = "async";
+    public static final String TRANSPORT_HTTP2 = "http2";
+
     private Integer pageSize = 100;
 
     private Boolean readLocation = true;
 
+    private Integer detailFetchThreads = 1;
+
+    private Boolean orderedResults = true;
+
+    private Integer detailCacheSize = 0;
+
+    private Integer detailCacheTtl = 3600;
+
+    private Boolean streamListPages = false;
+
+    private Integer pageReadAhead = 0;
+
+    private Integer pageFetchThreads = 1;
+
+    private Double requestsPerSecond = 0.0;
+
+    private Integer maxThrottlingRetries = 10;
+
+    private Integer maxRetries = 3;
+
+    private Integer retryBaseDelay = 200;
+
+    private Integer retryMaxDelay = 10000;
+
+    private Integer circuitBreakerThreshold = 5;
+
+    private Integer circuitBreakerOpenTime = 30;
+
+    private Boolean sharedConnectionPool = false;
+
+    private Integer maxConnectionsPerRoute = 20;
+
+    private Integer maxConnectionsTotal = 50;
+
+    private Integer connectionTimeToLive = 60;
+
+    private Integer idleConnectionTimeout = 30;
+
+    private Integer emailIndexStaleness = 0;
+
+    private Boolean diffPatch = false;
+
+    private Boolean diffPatchFromCache = false;
+
+    private Integer logMaxBodySize = 1000;
+
+    private Integer logUserSampling = 100;
+
+    private String[] logRedactedFields = {SmartRecruitersConnector.ATTR_PASSWORD};
+
+    private Integer metricsLogInterval = 0;
+
+    private Boolean virtualThreads = false;
+
+    private String transport = TRANSPORT_BLOCKING;
+
+    private Integer asyncIoThreads = 0;
+
+    private Boolean responseCompression = false;
+
+    private Integer validatorCacheSize = 0;
+
+    private String checkpointDirectory = null;
+
+    private Integer checkpointTtl = 3600;
+
     @Override
     public String toString() {
         return "SmartRecruitersConfiguration{" +
@@ -37,6 +109,39 @@ public class SmartRecruitersConfiguration extends AbstractRestConfiguration {
                 ", tokenName=" + getTokenName() +
                 ", pageSize=" + pageSize +
                 ", readLocation=" + readLocation +
+                ", detailFetchThreads=" + detailFetchThreads +
+                ", orderedResults=" + orderedResults +
+                ", detailCacheSize=" + detailCacheSize +
+                ", detailCacheTtl=" + detailCacheTtl +
+                ", streamListPages=" + streamListPages +
+                ", pageReadAhead=" + pageReadAhead +
+                ", pageFetchThreads=" + pageFetchThreads +
+                ", requestsPerSecond=" + requestsPerSecond +
+                ", maxThrottlingRetries=" + maxThrottlingRetries +
+                ", maxRetries=" + maxRetries +
+                ", retryBaseDelay=" + retryBaseDelay +
+                ", retryMaxDelay=" + retryMaxDelay +
+                ", circuitBreakerThreshold=" + circuitBreakerThreshold +
+                ", circuitBreakerOpenTime=" + circuitBreakerOpenTime +
+                ", sharedConnectionPool=" + sharedConnectionPool +
+                ", maxConnectionsPerRoute=" + maxConnectionsPerRoute +
+                ", maxConnectionsTotal=" + maxConnectionsTotal +
+                ", connectionTimeToLive=" + connectionTimeToLive +
+                ", idleConnectionTimeout=" + idleConnectionTimeout +
+                ", emailIndexStaleness=" + emailIndexStaleness +
+                ", diffPatch=" + diffPatch +
+                ", diffPatchFromCache=" + diffPatchFromCache +
+                ", logMaxBodySize=" + logMaxBodySize +
+                ", logUserSampling=" + logUserSampling +
+                ", logRedactedFields=" + Arrays.toString(logRedactedFields) +
+                ", metricsLogInterval=" + metricsLogInterval +
+                ", virtualThreads=" + virtualThreads +
+                ", transport=" + transport +
+                ", asyncIoThreads=" + asyncIoThreads +
+                ", responseCompression=" + responseCompression +
+                ", validatorCacheSize=" + validatorCacheSize +
+                ", checkpointDirectory=" + checkpointDirectory +
+                ", checkpointTtl=" + checkpointTtl +
                 '}';
     }
 
@@ -60,4 +165,334 @@ public class SmartRecruitersConfiguration extends AbstractRestConfiguration {
     public void setReadLocation(Boolean readLocation) {
         this.readLocation = readLocation;
     }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.detailFetchThreads",
+            helpMessageKey = "smartrecruiters.config.detailFetchThreads.help")
+    public int getDetailFetchThreads() {
+        return detailFetchThreads;
+    }
+
+    public void setDetailFetchThreads(int detailFetchThreads) {
+        this.detailFetchThreads = detailFetchThreads;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.orderedResults",
+            helpMessageKey = "smartrecruiters.config.orderedResults.help")
+    public Boolean getOrderedResults() {
+        return orderedResults;
+    }
+
+    public void setOrderedResults(Boolean orderedResults) {
+        this.orderedResults = orderedResults;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.detailCacheSize",
+            helpMessageKey = "smartrecruiters.config.detailCacheSize.help")
+    public int getDetailCacheSize() {
+        return detailCacheSize;
+    }
+
+    public void setDetailCacheSize(int detailCacheSize) {
+        this.detailCacheSize = detailCacheSize;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.detailCacheTtl",
+            helpMessageKey = "smartrecruiters.config.detailCacheTtl.help")
+    public int getDetailCacheTtl() {
+        return detailCacheTtl;
+    }
+
+    public void setDetailCacheTtl(int detailCacheTtl) {
+        this.detailCacheTtl = detailCacheTtl;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.streamListPages",
+            helpMessageKey = "smartrecruiters.config.streamListPages.help")
+    public Boolean getStreamListPages() {
+        return streamListPages;
+    }
+
+    public void setStreamListPages(Boolean streamListPages) {
+        this.streamListPages = streamListPages;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.pageReadAhead",
+            helpMessageKey = "smartrecruiters.config.pageReadAhead.help")
+    public int getPageReadAhead() {
+        return pageReadAhead;
+    }
+
+    public void setPageReadAhead(int pageReadAhead) {
+        this.pageReadAhead = pageReadAhead;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.pageFetchThreads",
+            helpMessageKey = "smartrecruiters.config.pageFetchThreads.help")
+    public int getPageFetchThreads() {
+        return pageFetchThreads;
+    }
+
+    public void setPageFetchThreads(int pageFetchThreads) {
+        this.pageFetchThreads = pageFetchThreads;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.requestsPerSecond",
+            helpMessageKey = "smartrecruiters.config.requestsPerSecond.help")
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public void setRequestsPerSecond(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.maxThrottlingRetries",
+            helpMessageKey = "smartrecruiters.config.maxThrottlingRetries.help")
+    public int getMaxThrottlingRetries() {
+        return maxThrottlingRetries;
+    }
+
+    public void setMaxThrottlingRetries(int maxThrottlingRetries) {
+        this.maxThrottlingRetries = maxThrottlingRetries;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.maxRetries",
+            helpMessageKey = "smartrecruiters.config.maxRetries.help")
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.retryBaseDelay",
+            helpMessageKey = "smartrecruiters.config.retryBaseDelay.help")
+    public int getRetryBaseDelay() {
+        return retryBaseDelay;
+    }
+
+    public void setRetryBaseDelay(int retryBaseDelay) {
+        this.retryBaseDelay = retryBaseDelay;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.retryMaxDelay",
+            helpMessageKey = "smartrecruiters.config.retryMaxDelay.help")
+    public int getRetryMaxDelay() {
+        return retryMaxDelay;
+    }
+
+    public void setRetryMaxDelay(int retryMaxDelay) {
+        this.retryMaxDelay = retryMaxDelay;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.circuitBreakerThreshold",
+            helpMessageKey = "smartrecruiters.config.circuitBreakerThreshold.help")
+    public int getCircuitBreakerThreshold() {
+        return circuitBreakerThreshold;
+    }
+
+    public void setCircuitBreakerThreshold(int circuitBreakerThreshold) {
+        this.circuitBreakerThreshold = circuitBreakerThreshold;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.circuitBreakerOpenTime",
+            helpMessageKey = "smartrecruiters.config.circuitBreakerOpenTime.help")
+    public int getCircuitBreakerOpenTime() {
+        return circuitBreakerOpenTime;
+    }
+
+    public void setCircuitBreakerOpenTime(int circuitBreakerOpenTime) {
+        this.circuitBreakerOpenTime = circuitBreakerOpenTime;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.sharedConnectionPool",
+            helpMessageKey = "smartrecruiters.config.sharedConnectionPool.help")
+    public Boolean getSharedConnectionPool() {
+        return sharedConnectionPool;
+    }
+
+    public void setSharedConnectionPool(Boolean sharedConnectionPool) {
+        this.sharedConnectionPool = sharedConnectionPool;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.maxConnectionsPerRoute",
+            helpMessageKey = "smartrecruiters.config.maxConnectionsPerRoute.help")
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.maxConnectionsTotal",
+            helpMessageKey = "smartrecruiters.config.maxConnectionsTotal.help")
+    public int getMaxConnectionsTotal() {
+        return maxConnectionsTotal;
+    }
+
+    public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+        this.maxConnectionsTotal = maxConnectionsTotal;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.connectionTimeToLive",
+            helpMessageKey = "smartrecruiters.config.connectionTimeToLive.help")
+    public int getConnectionTimeToLive() {
+        return connectionTimeToLive;
+    }
+
+    public void setConnectionTimeToLive(int connectionTimeToLive) {
+        this.connectionTimeToLive = connectionTimeToLive;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.idleConnectionTimeout",
+            helpMessageKey = "smartrecruiters.config.idleConnectionTimeout.help")
+    public int getIdleConnectionTimeout() {
+        return idleConnectionTimeout;
+    }
+
+    public void setIdleConnectionTimeout(int idleConnectionTimeout) {
+        this.idleConnectionTimeout = idleConnectionTimeout;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.emailIndexStaleness",
+            helpMessageKey = "smartrecruiters.config.emailIndexStaleness.help")
+    public int getEmailIndexStaleness() {
+        return emailIndexStaleness;
+    }
+
+    public void setEmailIndexStaleness(int emailIndexStaleness) {
+        this.emailIndexStaleness = emailIndexStaleness;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.diffPatch",
+            helpMessageKey = "smartrecruiters.config.diffPatch.help")
+    public Boolean getDiffPatch() {
+        return diffPatch;
+    }
+
+    public void setDiffPatch(Boolean diffPatch) {
+        this.diffPatch = diffPatch;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.diffPatchFromCache",
+            helpMessageKey = "smartrecruiters.config.diffPatchFromCache.help")
+    public Boolean getDiffPatchFromCache() {
+        return diffPatchFromCache;
+    }
+
+    public void setDiffPatchFromCache(Boolean diffPatchFromCache) {
+        this.diffPatchFromCache = diffPatchFromCache;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.logMaxBodySize",
+            helpMessageKey = "smartrecruiters.config.logMaxBodySize.help")
+    public int getLogMaxBodySize() {
+        return logMaxBodySize;
+    }
+
+    public void setLogMaxBodySize(int logMaxBodySize) {
+        this.logMaxBodySize = logMaxBodySize;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.logUserSampling",
+            helpMessageKey = "smartrecruiters.config.logUserSampling.help")
+    public int getLogUserSampling() {
+        return logUserSampling;
+    }
+
+    public void setLogUserSampling(int logUserSampling) {
+        this.logUserSampling = logUserSampling;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.logRedactedFields",
+            helpMessageKey = "smartrecruiters.config.logRedactedFields.help")
+    public String[] getLogRedactedFields() {
+        return logRedactedFields;
+    }
+
+    public void setLogRedactedFields(String[] logRedactedFields) {
+        this.logRedactedFields = logRedactedFields;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.metricsLogInterval",
+            helpMessageKey = "smartrecruiters.config.metricsLogInterval.help")
+    public int getMetricsLogInterval() {
+        return metricsLogInterval;
+    }
+
+    public void setMetricsLogInterval(int metricsLogInterval) {
+        this.metricsLogInterval = metricsLogInterval;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.virtualThreads",
+            helpMessageKey = "smartrecruiters.config.virtualThreads.help")
+    public Boolean getVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(Boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.transport",
+            helpMessageKey = "smartrecruiters.config.transport.help")
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.asyncIoThreads",
+            helpMessageKey = "smartrecruiters.config.asyncIoThreads.help")
+    public int getAsyncIoThreads() {
+        return asyncIoThreads;
+    }
+
+    public void setAsyncIoThreads(int asyncIoThreads) {
+        this.asyncIoThreads = asyncIoThreads;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.responseCompression",
+            helpMessageKey = "smartrecruiters.config.responseCompression.help")
+    public Boolean getResponseCompression() {
+        return responseCompression;
+    }
+
+    public void setResponseCompression(Boolean responseCompression) {
+        this.responseCompression = responseCompression;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.validatorCacheSize",
+            helpMessageKey = "smartrecruiters.config.validatorCacheSize.help")
+    public int getValidatorCacheSize() {
+        return validatorCacheSize;
+    }
+
+    public void setValidatorCacheSize(int validatorCacheSize) {
+        this.validatorCacheSize = validatorCacheSize;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.checkpointDirectory",
+            helpMessageKey = "smartrecruiters.config.checkpointDirectory.help")
+    public String getCheckpointDirectory() {
+        return checkpointDirectory;
+    }
+
+    public void setCheckpointDirectory(String checkpointDirectory) {
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "smartrecruiters.config.checkpointTtl",
+            helpMessageKey = "smartrecruiters.config.checkpointTtl.help")
+    public int getCheckpointTtl() {
+        return checkpointTtl;
+    }
+
+    public void setCheckpointTtl(int checkpointTtl) {
+        this.checkpointTtl = checkpointTtl;
+    }
 }
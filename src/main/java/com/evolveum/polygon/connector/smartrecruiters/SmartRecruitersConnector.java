@@ -16,17 +16,23 @@
 package com.evolveum.polygon.connector.smartrecruiters;
 
 import com.evolveum.polygon.rest.AbstractRestConnector;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.*;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.util.EntityUtils;
 import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.common.logging.Log;
-import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.framework.common.exceptions.AlreadyExistsException;
+import org.identityconnectors.framework.common.exceptions.ConfigurationException;
 import org.identityconnectors.framework.common.exceptions.ConnectorIOException;
 import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
 import org.identityconnectors.framework.common.objects.*;
+import org.identityconnectors.framework.common.objects.filter.Filter;
 import org.identityconnectors.framework.common.objects.filter.FilterTranslator;
 import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.ConnectorClass;
@@ -36,16 +42,26 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author gpalos
  */
 @ConnectorClass(displayNameKey = "smartrecruiters.connector.display", configurationClass = SmartRecruitersConfiguration.class)
-public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruitersConfiguration> implements PoolableConnector, TestOp, SchemaOp, CreateOp, DeleteOp, UpdateOp, SearchOp<SmartRecruitersFilter> {
+public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruitersConfiguration> implements PoolableConnector, TestOp, SchemaOp, CreateOp, DeleteOp, UpdateOp, SearchOp<SmartRecruitersFilter>, SyncOp {
 
     private static final Log LOG = Log.getLog(SmartRecruitersConnector.class);
 
@@ -76,11 +92,46 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
     public static final String CONFLICT = "CONFLICT"; //detect in UID if this is a conflict
     public static final String CONFLICT_SEPARATOR = "|";
 
+    public static final String OP_SCAN_ID = "scanId"; // operation option, listing of all users with this id is checkpointed and resumed
+
     private static final String[] AVAILABLE_ROLES = {"EMPLOYEE", "RESTRICTED" /*BASIC in manual*/, "STANDARD", "EXTENDED", "ADMINISTRATOR"};
 
     private static final String CONTENT_TYPE_JSON = "application/json";
     private static final String CONTENT_TYPE_JSON_PATCH = "application/json-patch+json";
 
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private ExecutorService detailExecutor;
+
+    private ExecutorService pageExecutor;
+
+    private UserDetailCache detailCache;
+
+    private ValidatorCache validatorCache;
+
+    private RateLimiter rateLimiter;
+
+    private RetryPolicy retryPolicy;
+
+    private Transport transport;
+
+    private SharedConnectionPool connectionPool;
+
+    private AsyncTransport asyncTransport;
+
+    private Semaphore asyncPermits;
+
+    private EmailIndex emailIndex;
+
+    private MessageLog messageLog;
+
+    private RequestMetrics metrics;
+
 
     @Override
     public void test() {
@@ -96,90 +147,167 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
     @Override
     public void init(Configuration configuration) {
         super.init(configuration);
-        LOG.ok("configuration: {0}", ((SmartRecruitersConfiguration) this.getConfiguration()).toString());
+        LOG.ok("configuration: {0}", this.getConfiguration());
+        messageLog = new MessageLog(LOG, getConfiguration().getLogMaxBodySize(), getConfiguration().getLogUserSampling(),
+                getConfiguration().getLogRedactedFields());
+        rateLimiter = RateLimiter.getInstance(getConfiguration().getServiceAddress(), getConfiguration().getRequestsPerSecond());
+        retryPolicy = new RetryPolicy(getConfiguration());
+        metrics = RequestMetrics.getInstance(getConfiguration().getServiceAddress(), getConfiguration().getMetricsLogInterval() * 1000L);
+        transport = createTransport(getConfiguration().getTransport());
+        if (getConfiguration().getEmailIndexStaleness() > 0) {
+            emailIndex = EmailIndex.getInstance(getConfiguration().getServiceAddress(), getConfiguration().getEmailIndexStaleness() * 1000L);
+        }
+        if (getConfiguration().getDetailCacheSize() > 0) {
+            detailCache = UserDetailCache.getInstance(getConfiguration().getServiceAddress(),
+                    getConfiguration().getDetailCacheSize(), getConfiguration().getDetailCacheTtl() * 1000L);
+        }
+        if (getConfiguration().getValidatorCacheSize() > 0) {
+            validatorCache = ValidatorCache.getInstance(getConfiguration().getServiceAddress(), getConfiguration().getValidatorCacheSize());
+        }
     }
 
     @Override
     public void dispose() {
+        if (detailExecutor != null) {
+            detailExecutor.shutdownNow();
+            detailExecutor = null;
+        }
+        if (pageExecutor != null) {
+            pageExecutor.shutdownNow();
+            pageExecutor = null;
+        }
+        LOG.ok("rate limiter: {0}", rateLimiter);
+        LOG.ok("retry policy: {0}", retryPolicy);
+        LOG.ok("request metrics: {0}", metrics);
+        if (transport != null) {
+            LOG.ok("transport: {0}", transport);
+            transport.release();
+            transport = null;
+            connectionPool = null;
+            asyncTransport = null;
+            asyncPermits = null;
+        }
+        if (emailIndex != null) {
+            LOG.ok("e-mail index: {0}", emailIndex);
+            emailIndex = null;
+        }
+        if (detailCache != null) {
+            LOG.ok("detail cache: {0}", detailCache);
+            detailCache = null;
+        }
+        if (validatorCache != null) {
+            LOG.ok("validator cache: {0}", validatorCache);
+            validatorCache = null;
+        }
         super.dispose();
     }
 
-    @Override
-    public Schema schema() {
-        SchemaBuilder schemaBuilder = new SchemaBuilder(SmartRecruitersConnector.class);
-        schemaBuilder.defineObjectClass(schemaAccount());
-        return schemaBuilder.build();
+    private Transport createTransport(String name) {
+        if (SmartRecruitersConfiguration.TRANSPORT_ASYNC.equals(name)) {
+            asyncTransport = AsyncTransport.acquire(getConfiguration());
+            // same number of requests in flight as with the blocking transport
+            asyncPermits = new Semaphore(Math.max(getConfiguration().getDetailFetchThreads(), 1));
+            return asyncTransport;
+        }
+        if (SmartRecruitersConfiguration.TRANSPORT_HTTP2.equals(name)) {
+            if (Http2Transport.isAvailable()) {
+                return Http2Transport.acquire(getConfiguration());
+            }
+            LOG.warn("HTTP/2 transport needs Java 11 or newer, running on Java {0}, using blocking transport",
+                    System.getProperty("java.version"));
+        } else if (!SmartRecruitersConfiguration.TRANSPORT_BLOCKING.equals(name)) {
+            throw new ConfigurationException("Unsupported transport: " + name);
+        }
+        if (getConfiguration().getSharedConnectionPool()) {
+            connectionPool = SharedConnectionPool.acquire(getConfiguration());
+            return connectionPool;
+        }
+        return new ConnectorTransport();
     }
 
-    private ObjectClassInfo schemaAccount() {
-        ObjectClassInfoBuilder objClassBuilder = new ObjectClassInfoBuilder();
-
-        // UID, NAME (email), PASSWORD are defaults
-
-        // read only and only when conflict is detected
-        AttributeInfoBuilder attrEmailConflictBuilder = new AttributeInfoBuilder(ATTR_EMAIL_CONFLICT, Boolean.class);
-        attrEmailConflictBuilder.setReturnedByDefault(false);
-        attrEmailConflictBuilder.setCreateable(false);
-        attrEmailConflictBuilder.setUpdateable(false);
-        attrEmailConflictBuilder.setReadable(true);
-        objClassBuilder.addAttributeInfo(attrEmailConflictBuilder.build());
-
-        AttributeInfoBuilder firstNameBuilder = new AttributeInfoBuilder(ATTR_FIRST_NAME);
-        objClassBuilder.addAttributeInfo(firstNameBuilder.build());
-        AttributeInfoBuilder lastNameBuilder = new AttributeInfoBuilder(ATTR_LAST_NAME);
-        objClassBuilder.addAttributeInfo(lastNameBuilder.build());
-        AttributeInfoBuilder updateOnBuilder = new AttributeInfoBuilder(ATTR_UPDATED_ON);
-        objClassBuilder.addAttributeInfo(updateOnBuilder.build());
-        AttributeInfoBuilder roleBuilder = new AttributeInfoBuilder(ATTR_ROLE);
-        objClassBuilder.addAttributeInfo(roleBuilder.build());
-
-        AttributeInfoBuilder attrRolesBuilder = new AttributeInfoBuilder(ATTR_ROLES, String.class);
-        attrRolesBuilder.setMultiValued(true);
-        objClassBuilder.addAttributeInfo(attrRolesBuilder.build());
-
-        AttributeInfoBuilder externalDataBuilder = new AttributeInfoBuilder(ATTR_EXTERNAL_DATA);
-        objClassBuilder.addAttributeInfo(externalDataBuilder.build());
-
-        AttributeInfoBuilder ssoIdentifierDataBuilder = new AttributeInfoBuilder(ATTR_SSO_IDENTIFIER);
-        objClassBuilder.addAttributeInfo(ssoIdentifierDataBuilder.build());
+    /**
+     * Sends requests over the HTTP client of this connector instance.
+     */
+    private class ConnectorTransport implements Transport {
+        @Override
+        public CloseableHttpResponse send(HttpRequestBase request) {
+            return execute(request);
+        }
 
-        AttributeInfoBuilder countryBuilder = new AttributeInfoBuilder(ATTR_LOCATION_COUNTRY);
-        countryBuilder.setReturnedByDefault(false);
-        objClassBuilder.addAttributeInfo(countryBuilder.build());
+        @Override
+        public void release() {
+            // client is closed with the connector
+        }
 
-        AttributeInfoBuilder countryCodeBuilder = new AttributeInfoBuilder(ATTR_LOCATION_COUNTRY_COODE);
-        countryCodeBuilder.setReturnedByDefault(false);
-        objClassBuilder.addAttributeInfo(countryCodeBuilder.build());
+        @Override
+        public String toString() {
+            return "ConnectorTransport";
+        }
+    }
 
-        AttributeInfoBuilder regionCodeBuilder = new AttributeInfoBuilder(ATTR_LOCATION_REGION_CODE);
-        regionCodeBuilder.setReturnedByDefault(false);
-        objClassBuilder.addAttributeInfo(regionCodeBuilder.build());
+    /**
+     * @return number of retries and state of circuit breakers per endpoint
+     */
+    public Map<String, Object> getRetryStatistics() {
+        return retryPolicy.getStatistics();
+    }
 
-        AttributeInfoBuilder regionBuilder = new AttributeInfoBuilder(ATTR_LOCATION_REGION);
-        regionBuilder.setReturnedByDefault(false);
-        objClassBuilder.addAttributeInfo(regionBuilder.build());
+    /**
+     * @return requests, failures, latency histogram, bytes in and out and status codes per endpoint and method
+     * (e.g. list.GET.requests), listing time split to reading pages and handler
+     */
+    public Map<String, Long> getRequestMetrics() {
+        return metrics.getSnapshot();
+    }
 
-        AttributeInfoBuilder cityBuilder = new AttributeInfoBuilder(ATTR_LOCATION_CITY);
-        cityBuilder.setReturnedByDefault(false);
-        objClassBuilder.addAttributeInfo(cityBuilder.build());
+    /**
+     * @return leased, available and pending connections and lease waits of the shared connection pool,
+     * empty when the pool is not shared
+     */
+    public Map<String, Long> getConnectionPoolStatistics() {
+        if (connectionPool == null) {
+            return new LinkedHashMap<String, Long>();
+        }
+        return connectionPool.getStatistics();
+    }
 
-        AttributeInfoBuilder addressBuilder = new AttributeInfoBuilder(ATTR_LOCATION_ADDRESS);
-        addressBuilder.setReturnedByDefault(false);
-        objClassBuilder.addAttributeInfo(addressBuilder.build());
+    /**
+     * @return hits, misses, evictions and size of the user detail cache, empty when cache is disabled
+     */
+    public Map<String, Long> getDetailCacheStatistics() {
+        if (detailCache == null) {
+            return new LinkedHashMap<String, Long>();
+        }
+        return detailCache.getStatistics();
+    }
 
-        AttributeInfoBuilder postalCodeBuilder = new AttributeInfoBuilder(ATTR_LOCATION_POSTAL_CODE);
-        postalCodeBuilder.setReturnedByDefault(false);
-        objClassBuilder.addAttributeInfo(postalCodeBuilder.build());
+    /**
+     * @return size, responses not modified (served from cache), modified and evictions of the validator cache,
+     * empty when conditional requests are disabled
+     */
+    public Map<String, Long> getValidatorCacheStatistics() {
+        if (validatorCache == null) {
+            return new LinkedHashMap<String, Long>();
+        }
+        return validatorCache.getStatistics();
+    }
 
-        AttributeInfoBuilder longitudeBuilder = new AttributeInfoBuilder(ATTR_LOCATION_LONGITUDE);
-        longitudeBuilder.setReturnedByDefault(false);
-        objClassBuilder.addAttributeInfo(longitudeBuilder.build());
+    @Override
+    public Schema schema() {
+        SchemaBuilder schemaBuilder = new SchemaBuilder(SmartRecruitersConnector.class);
+        schemaBuilder.defineObjectClass(schemaAccount());
+        return schemaBuilder.build();
+    }
 
-        AttributeInfoBuilder latitudeBuilder = new AttributeInfoBuilder(ATTR_LOCATION_LATITUDE);
-        latitudeBuilder.setReturnedByDefault(false);
-        objClassBuilder.addAttributeInfo(latitudeBuilder.build());
+    private ObjectClassInfo schemaAccount() {
+        ObjectClassInfoBuilder objClassBuilder = new ObjectClassInfoBuilder();
 
-        objClassBuilder.addAttributeInfo(OperationalAttributeInfos.ENABLE);     // active
+        // UID, NAME (email), PASSWORD are defaults
+        for (UserAttribute attribute : UserAttribute.all()) {
+            if (attribute.getInfo() != null) {
+                objClassBuilder.addAttributeInfo(attribute.getInfo());
+            }
+        }
 
         return objClassBuilder.build();
     }
@@ -196,11 +324,11 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
 
     protected JSONObject callRequest(HttpEntityEnclosingRequestBase request, Object json, String contentType, String uid, String name) throws IOException {
         // don't log request here - password field !!!
-        LOG.ok("request URI: {0}", request.getURI() + ", method: " + request.getMethod());
+        LOG.ok("request URI: {0}, method: {1}", request.getURI(), request.getMethod());
         request.setHeader("Content-Type", contentType);
         HttpEntity entity = new ByteArrayEntity(json.toString().getBytes("UTF-8"));
         request.setEntity(entity);
-        CloseableHttpResponse response = execute(request);
+        CloseableHttpResponse response = executeRequest(request);
         LOG.ok("response: {0}", response);
         JSONObject conflict = processSmartRecruiterResponseErrors(response, uid, name);
         // conflict detected, return fake response
@@ -213,7 +341,7 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
             return null;
         }
         String result = EntityUtils.toString(response.getEntity());
-        LOG.ok("response body: {0}", result);
+        messageLog.body("response body: {0}", result);
         closeResponse(response);
         return new JSONObject(result);
     }
@@ -222,7 +350,7 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
         LOG.ok("request URI: {0}", request.getURI());
         request.setHeader("Content-Type", CONTENT_TYPE_JSON);
         CloseableHttpResponse response = null;
-        response = execute(request);
+        response = executeRequest(request);
         LOG.ok("response: {0}", response);
         processSmartRecruiterResponseErrors(response, null, null);
 
@@ -230,8 +358,12 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
             closeResponse(response);
             return null;
         }
+        return readJson(response);
+    }
+
+    private JSONObject readJson(CloseableHttpResponse response) throws IOException {
         String result = EntityUtils.toString(response.getEntity());
-        LOG.ok("response body: {0}", result);
+        messageLog.body("response body: {0}", result);
         closeResponse(response);
         return new JSONObject(result);
     }
@@ -239,7 +371,7 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
     protected JSONObject callRequest(HttpRequestBase request) throws IOException {
         LOG.ok("request URI: {0}", request.getURI());
         request.setHeader("Content-Type", CONTENT_TYPE_JSON);
-        CloseableHttpResponse response = execute(request);
+        CloseableHttpResponse response = executeRequest(request);
         LOG.ok("response: {0}", response);
         processSmartRecruiterResponseErrors(response, null, null);
 
@@ -248,88 +380,235 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
             return null;
         }
         String result = EntityUtils.toString(response.getEntity());
-        LOG.ok("response body: {0}", result);
+        messageLog.body("response body: {0}", result);
         closeResponse(response);
         return new JSONObject(result);
     }
 
-    private Uid createUser(Set<Attribute> attributes) {
-        LOG.ok("createUser, attributes: {1}", attributes);
+    /**
+     * Executes request within the rate limit, throttled requests (429) are repeated after Retry-After.
+     * Idempotent requests are repeated also after I/O error or 5xx response, requests to an endpoint
+     * fail fast while its circuit breaker is open.
+     */
+    protected CloseableHttpResponse executeRequest(HttpRequestBase request) throws IOException {
+        return executeRequest(request, null, null);
+    }
 
-        // email
-        String name = getStringAttr(attributes, Name.NAME);
-        try {
-            HttpGet requestSearch = new HttpGet(getConfiguration().getServiceAddress() + "?q=" + URLEncoder.encode(name, "UTF-8"));
-            JSONObject result = callRequest(requestSearch);
-            if (result.getInt("totalFound") > 0) {
-                throw new AlreadyExistsException("user with same e-mail address already exists: " + result.getJSONArray("content"));
-            }
-        } catch (IOException ioe) {
-            LOG.warn(ioe, "something wrong whe try to find: {0}", ioe);
+    /**
+     * Executes request, the first attempt can be already sent over the async transport (its metrics are counted
+     * by the callback), its response or error is then handled as any other attempt.
+     *
+     * @param received response of the first attempt sent over the async transport, or null
+     * @param error    I/O error of the first attempt sent over the async transport, or null
+     */
+    private CloseableHttpResponse executeRequest(HttpRequestBase request, CloseableHttpResponse received,
+                                                 ConnectorIOException error) throws IOException {
+        Endpoint endpoint = Endpoint.of(request, getConfiguration().getServiceAddress());
+        CircuitBreaker circuitBreaker = retryPolicy.getCircuitBreaker(endpoint);
+        boolean idempotent = Endpoint.isIdempotent(request, endpoint);
+        if (getConfiguration().getResponseCompression()) {
+            request.setHeader(ResponseCompression.ACCEPT_ENCODING, ResponseCompression.SUPPORTED_ENCODINGS);
         }
+        int throttled = 0;
+        int failed = 0;
+        // request allowed by the circuit breaker is waiting for its outcome
+        boolean allowed = received != null || error != null;
+        try {
+            while (true) {
+                CloseableHttpResponse response = received;
+                if (received != null || error != null) {
+                    received = null;
+                } else {
+                    if (!circuitBreaker.allowRequest()) {
+                        throw new ConnectorIOException("SmartRecruiters endpoint " + endpoint + " is failing, circuit breaker is open: " + request.getURI());
+                    }
+                    allowed = true;
+                    rateLimiter.acquire();
+
+                    long start = System.nanoTime();
+                    try {
+                        response = send(request);
+                        metrics.response(endpoint, request.getMethod(), System.nanoTime() - start,
+                                response.getStatusLine().getStatusCode(), contentLength(request));
+                    } catch (ConnectorIOException e) {
+                        metrics.failure(endpoint, request.getMethod(), System.nanoTime() - start, contentLength(request));
+                        error = e;
+                    }
+                }
+                if (error != null) {
+                    ConnectorIOException e = error;
+                    error = null;
+                    circuitBreaker.failure();
+                    allowed = false;
+                    failed++;
+                    if (idempotent && retryPolicy.canRetry(failed)) {
+                        LOG.warn("Request {0} failed ({1}), retry {2}", request.getURI(), e.getMessage(), failed);
+                        retryPolicy.backoff(failed);
+                        continue;
+                    }
+                    throw e;
+                }
 
-        JSONObject jo = new JSONObject();
+                int statusCode = response.getStatusLine().getStatusCode();
+                receive(endpoint, request.getMethod(), response);
+                if (statusCode == HTTP_TOO_MANY_REQUESTS) {
+                    // server is alive, only busy
+                    circuitBreaker.success();
+                    allowed = false;
+                    if (throttled >= getConfiguration().getMaxThrottlingRetries()) {
+                        LOG.warn("Request {0} still throttled after {1} retries", request.getURI(), throttled);
+                        return response;
+                    }
+                    throttled++;
+                    rateLimiter.throttled(response);
+                    closeResponse(response);
+                    continue;
+                }
+                if (statusCode >= 500) {
+                    circuitBreaker.failure();
+                    allowed = false;
+                    failed++;
+                    if (idempotent && retryPolicy.canRetry(failed)) {
+                        LOG.warn("Request {0} failed with status {1}, retry {2}", request.getURI(), statusCode, failed);
+                        closeResponse(response);
+                        retryPolicy.backoff(failed);
+                        continue;
+                    }
+                    return response;
+                }
 
-        if (StringUtil.isBlank(name)) {
-            throw new InvalidAttributeValueException("Missing mandatory attribute " + Name.NAME + " (email)");
-        }
-        if (name != null) {
-            jo.put(ATTR_EMAIL, name);
+                circuitBreaker.success();
+                allowed = false;
+                rateLimiter.update(response);
+                return response;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorIOException("Interrupted when waiting to send request: " + request.getURI(), e);
+        } finally {
+            if (allowed) {
+                // interrupted or unexpected error, trial request of half-open circuit must not stay running
+                circuitBreaker.release();
+            }
         }
+    }
 
-
-        String firstName = getStringAttr(attributes, ATTR_FIRST_NAME);
-        if (StringUtil.isBlank(firstName)) {
-            throw new InvalidAttributeValueException("Missing mandatory attribute " + ATTR_FIRST_NAME);
-        }
-        if (firstName != null) {
-            jo.put(ATTR_FIRST_NAME, firstName);
+    /**
+     * Counts received bytes, compressed body is decompressed while it is read.
+     */
+    private void receive(Endpoint endpoint, String method, HttpResponse response) {
+        HttpEntity entity = metrics.countBytesIn(endpoint, method, response.getEntity());
+        if (ResponseCompression.isCompressed(entity)) {
+            entity = ResponseCompression.decode(entity);
+            response.removeHeaders(ResponseCompression.CONTENT_ENCODING);
         }
+        response.setEntity(metrics.countBytesInUncompressed(endpoint, method, entity));
+    }
 
-        String lastName = getStringAttr(attributes, ATTR_LAST_NAME);
-        if (StringUtil.isBlank(lastName)) {
-            throw new InvalidAttributeValueException("Missing mandatory attribute " + ATTR_LAST_NAME);
-        }
-        if (lastName != null) {
-            jo.put(ATTR_LAST_NAME, lastName);
+    private long contentLength(HttpRequestBase request) {
+        if (request instanceof HttpEntityEnclosingRequestBase) {
+            HttpEntity entity = ((HttpEntityEnclosingRequestBase) request).getEntity();
+            return entity == null ? 0 : entity.getContentLength();
         }
+        return 0;
+    }
 
-        String role = getStringAttr(attributes, ATTR_ROLE);
-        String roles = getStrongestRole(getMultiValAttr(attributes, ATTR_ROLES, null));
-        if (roles != null) {
-            role = roles; // get value from multivalue
-        }
-        if (StringUtil.isBlank(role)) {
-            throw new InvalidAttributeValueException("Missing mandatory attribute " + ATTR_ROLE);
-        }
-        if (role != null) {
-            jo.put(ATTR_ROLE, role);
+    private CloseableHttpResponse send(HttpRequestBase request) {
+        try {
+            return transport.send(request);
+        } catch (IOException e) {
+            throw new ConnectorIOException(e.getMessage(), e);
         }
+    }
+
+    /**
+     * Reads list response directly from the response stream, users are passed to the handler one by one.
+     */
+    protected UserPage callPageRequest(HttpRequestBase request, final UserPageReader.UserHandler handler) throws IOException {
+        LOG.ok("request URI: {0}", request.getURI());
+        request.setHeader("Content-Type", CONTENT_TYPE_JSON);
+        CloseableHttpResponse response = executeRequest(request);
+        LOG.ok("response: {0}", response);
+        processSmartRecruiterResponseErrors(response, null, null);
+        return readPageResponse(response, handler);
+    }
 
-        final List<String> passwordList = new ArrayList<String>(1);
-        GuardedString guardedPassword = getAttr(attributes, OperationalAttributeInfos.PASSWORD.getName(), GuardedString.class);
-        if (guardedPassword != null) {
-            guardedPassword.access(new GuardedString.Accessor() {
+    private UserPage readPageResponse(CloseableHttpResponse response, final UserPageReader.UserHandler handler) throws IOException {
+        try {
+            HttpEntity entity = response.getEntity();
+            Charset charset = ContentType.getOrDefault(entity).getCharset();
+            UserPageReader reader = new UserPageReader(new InputStreamReader(entity.getContent(), charset == null ? Charset.forName("UTF-8") : charset));
+            UserPage page = reader.read(new UserPageReader.UserHandler() {
                 @Override
-                public void access(char[] chars) {
-                    passwordList.add(new String(chars));
+                public boolean handle(JSONObject user) throws IOException {
+                    indexUser(user);
+                    return handler.handle(user);
                 }
             });
+            LOG.ok("response page: {0}", page);
+            return page;
+        } finally {
+            closeResponse(response);
         }
-        String password = null;
-        if (!passwordList.isEmpty()) {
-            password = passwordList.get(0);
-        }
+    }
+
+    private Uid createUser(Set<Attribute> attributes) {
+        LOG.ok("createUser, attributes: {1}", attributes);
+        IndexedAttributes indexed = new IndexedAttributes(attributes);
 
-        Boolean enable = getAttr(attributes, OperationalAttributes.ENABLE_NAME, Boolean.class);
+        // email
+        String name = indexed.getString(Name.NAME);
+        // before the lookup, which needs the e-mail
+        checkRequired(UserAttribute.get(Name.NAME), name);
+        if (emailIndex != null && emailIndex.isKnownAbsent(name)) {
+            // SmartRecruiters still returns 409 when the e-mail is used
+            LOG.ok("e-mail {0} was not found when listing users, skipping search for duplicity", name);
+        } else {
+            try {
+                HttpGet requestSearch = new HttpGet(getConfiguration().getServiceAddress() + "?q=" + URLEncoder.encode(name, "UTF-8"));
+                JSONObject result = callRequest(requestSearch);
+                if (result.getInt("totalFound") > 0) {
+                    throw new AlreadyExistsException("user with same e-mail address already exists: " + result.getJSONArray("content"));
+                }
+            } catch (IOException ioe) {
+                LOG.warn(ioe, "something wrong whe try to find: {0}", ioe);
+            }
+        }
 
-        putFieldIfExists(attributes, ATTR_EXTERNAL_DATA, jo);
-        putFieldIfExists(attributes, ATTR_UPDATED_ON, jo); // read only?
-        putFieldIfExists(attributes, ATTR_SSO_IDENTIFIER, jo);
+        JSONObject jo = new JSONObject();
+        Map<String, JSONObject> nested = new LinkedHashMap<String, JSONObject>();
+        String password = null;
+        for (UserAttribute attribute : UserAttribute.all()) {
+            if (!attribute.isCreateable() || attribute.isMultiValued()) {
+                continue;
+            }
+            if (attribute.isPassword()) {
+                password = indexed.getPassword(attribute.getName());
+                continue;
+            }
+            String value = getValue(indexed, attribute);
+            checkRequired(attribute, value);
+            if (value == null) {
+                continue;
+            }
+            if (attribute.getParent() == null) {
+                jo.put(attribute.getField(), value);
+            } else {
+                JSONObject parent = nested.get(attribute.getParent());
+                if (parent == null) {
+                    parent = new JSONObject();
+                    nested.put(attribute.getParent(), parent);
+                }
+                parent.put(attribute.getField(), value);
+            }
+        }
+        for (Map.Entry<String, JSONObject> parent : nested.entrySet()) {
+            jo.append(parent.getKey(), parent.getValue());
+        }
 
-        handleLocation(attributes, jo);
+        Boolean enable = indexed.get(OperationalAttributes.ENABLE_NAME, Boolean.class);
 
-        LOG.ok("user request (without password): {0}", jo.toString());
+        messageLog.body("user request (without password): {0}", jo);
 
         if (password != null) {
             jo.put(ATTR_PASSWORD, password);
@@ -344,15 +623,11 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
             LOG.info("response ID: {0}", newUid);
 
             if (!newUid.contains(CONFLICT)) {
-                LOG.info("activating account");
-                request = new HttpPut(getConfiguration().getServiceAddress() + "/" + newUid + "/activation");
-                callRequest(request);
-
-                if (enable == null || !enable) {
-                    LOG.info("Deactivating account, because administrative status is set to: " + enable);
-                    HttpDelete deactivatingRequest = new HttpDelete(getConfiguration().getServiceAddress() + "/" + newUid + "/activation");
-                    callRequest(deactivatingRequest);
+                if (emailIndex != null) {
+                    emailIndex.put(name, newUid);
                 }
+                // only the request changing the state, never activate and deactivate again
+                activation(newUid, ProvisioningPlanner.planCreate(enable, jores));
             }
             return new Uid(newUid);
         } catch (IOException e) {
@@ -360,6 +635,21 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
         }
     }
 
+    private void activation(String uid, ProvisioningPlanner.Activation activation) throws IOException {
+        switch (activation) {
+            case ACTIVATE:
+                LOG.info("activating account");
+                callRequest(new HttpPut(getConfiguration().getServiceAddress() + "/" + uid + "/activation"));
+                break;
+            case DEACTIVATE:
+                LOG.info("Deactivating account");
+                callRequest(new HttpDelete(getConfiguration().getServiceAddress() + "/" + uid + "/activation"));
+                break;
+            default:
+                LOG.ok("activation not changed");
+        }
+    }
+
     private String getStrongestRole(String[] roles) {
         String ret = null;
         // from employee to more stronger roles - last is the best
@@ -382,57 +672,69 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
             LOG.ok("request ignored, empty attributes");
             return uid;
         }
+        IndexedAttributes indexed = new IndexedAttributes(attributes);
         JSONArray jo = new JSONArray();
-        String name = getStringAttr(attributes, Name.NAME);
+        String name = indexed.getString(Name.NAME);
+
+        // values already set are not sent
+        JSONObject current = null;
+        if (getConfiguration().getDiffPatch()) {
+            current = readCurrentUser(uid.getUidValue());
+        }
 
-        handlePatch(attributes, ATTR_FIRST_NAME, jo);
-        handlePatch(attributes, ATTR_LAST_NAME, jo);
-        handlePatch(attributes, Name.NAME, jo, ATTR_EMAIL);
-        handlePatch(attributes, ATTR_ROLE, jo);
-        handlePatch(attributes, ATTR_EXTERNAL_DATA, jo);
-        handlePatch(attributes, ATTR_UPDATED_ON, jo);
-        handlePatch(attributes, ATTR_SSO_IDENTIFIER, jo);
+        String password = null;
+        for (UserAttribute attribute : UserAttribute.all()) {
+            if (!attribute.isUpdateable() || attribute.isMultiValued()) {
+                continue;
+            }
+            if (attribute.isPassword()) {
+                password = indexed.getPassword(attribute.getName());
+                continue;
+            }
+            String value = getValue(indexed, attribute);
+            if (current != null && !isChanged(attribute, value, current)) {
+                LOG.ok("{0} not changed, skipping", attribute.getName());
+                continue;
+            }
+            handlePatch(attribute, value, jo);
+        }
 
-        handlePatch(attributes, ATTR_LOCATION_COUNTRY, jo, ATTR_LOCATION + "/" + ATTR_LOCATION_COUNTRY);
-        handlePatch(attributes, ATTR_LOCATION_COUNTRY_COODE, jo, ATTR_LOCATION + "/" + ATTR_LOCATION_COUNTRY_COODE);
-        handlePatch(attributes, ATTR_LOCATION_REGION_CODE, jo, ATTR_LOCATION + "/" + ATTR_LOCATION_REGION_CODE);
-        handlePatch(attributes, ATTR_LOCATION_REGION, jo, ATTR_LOCATION + "/" + ATTR_LOCATION_REGION);
-        handlePatch(attributes, ATTR_LOCATION_CITY, jo, ATTR_LOCATION + "/" + ATTR_LOCATION_CITY);
-        handlePatch(attributes, ATTR_LOCATION_ADDRESS, jo, ATTR_LOCATION + "/" + ATTR_LOCATION_ADDRESS);
-        handlePatch(attributes, ATTR_LOCATION_POSTAL_CODE, jo, ATTR_LOCATION + "/" + ATTR_LOCATION_POSTAL_CODE);
-        handlePatch(attributes, ATTR_LOCATION_LONGITUDE, jo, ATTR_LOCATION + "/" + ATTR_LOCATION_LONGITUDE);
-        handlePatch(attributes, ATTR_LOCATION_LATITUDE, jo, ATTR_LOCATION + "/" + ATTR_LOCATION_LATITUDE);
+        Boolean enable = indexed.get(OperationalAttributes.ENABLE_NAME, Boolean.class);
 
-        handlePatch(attributes, OperationalAttributeInfos.PASSWORD.getName(), jo, ATTR_PASSWORD);
+        messageLog.body("user request (without password): {0}", jo);
 
-        Boolean enable = getAttr(attributes, OperationalAttributes.ENABLE_NAME, Boolean.class);
+        if (password != null) {
+            handlePatch(UserAttribute.get(OperationalAttributes.PASSWORD_NAME), password, jo);
+        }
 
-        LOG.ok("user request (without password): {0}", jo.toString());
+        if (validatorCache != null) {
+            validatorCache.remove(uid.getUidValue());
+        }
+        if (detailCache != null) {
+            detailCache.remove(uid.getUidValue());
+        }
 
         try {
             String newUid = uid.getUidValue();
+            JSONObject jores = null;
             if (jo.length() > 0) {
                 HttpEntityEnclosingRequestBase request;
                 // update
                 request = new HttpPatch(getConfiguration().getServiceAddress() + "/" + uid.getUidValue());
-                JSONObject jores = callRequest(request, jo, CONTENT_TYPE_JSON_PATCH, newUid, name);
+                jores = callRequest(request, jo, CONTENT_TYPE_JSON_PATCH, newUid, name);
                 newUid = jores.getString(ATTR_ID);
+                if (emailIndex != null && name != null && !newUid.contains(CONFLICT)) {
+                    // e-mail changed
+                    emailIndex.removeUid(newUid);
+                    emailIndex.put(name, newUid);
+                }
             } else {
                 LOG.info("nothing changed, ignoring...");
             }
 
             if (!newUid.contains(CONFLICT)) {
-                if (enable != null && enable) {
-                    // enable
-                    LOG.info("activating account");
-                    HttpEntityEnclosingRequestBase activateRequest = new HttpPut(getConfiguration().getServiceAddress() + "/" + newUid + "/activation");
-                    callRequest(activateRequest);
-                } else if (enable != null && !enable) {
-                    // disable
-                    LOG.info("Deactivating account");
-                    HttpDelete deactivatingRequest = new HttpDelete(getConfiguration().getServiceAddress() + "/" + newUid + "/activation");
-                    callRequest(deactivatingRequest);
-                }
+                // patched or compared user knows its state, activation is sent only when it changes
+                activation(newUid, ProvisioningPlanner.planUpdate(enable, jores == null ? current : jores));
             }
 
             return new Uid(newUid);
@@ -441,78 +743,66 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
         }
     }
 
-    private void handlePatch(Set<Attribute> attributes, String attrName, JSONArray jo) {
-        handlePatch(attributes, attrName, jo, attrName);
-    }
-
-    private void handlePatch(Set<Attribute> attributes, String attrName, JSONArray jo, String path) {
-        String value = null;
-        // handle password
-        if (OperationalAttributeInfos.PASSWORD.getName().equals(attrName)) {
-            final List<String> passwordList = new ArrayList<String>(1);
-            GuardedString guardedPassword = getAttr(attributes, OperationalAttributeInfos.PASSWORD.getName(), GuardedString.class);
-            if (guardedPassword != null) {
-                guardedPassword.access(new GuardedString.Accessor() {
-                    @Override
-                    public void access(char[] chars) {
-                        passwordList.add(new String(chars));
-                    }
-                });
+    /**
+     * @return user detail to compare the update with, cached one when allowed
+     */
+    private JSONObject readCurrentUser(String uid) {
+        if (getConfiguration().getDiffPatchFromCache() && detailCache != null) {
+            JSONObject cached = detailCache.get(uid);
+            if (cached != null) {
+                return cached;
             }
-            String password = null;
-            if (!passwordList.isEmpty()) {
-                value = passwordList.get(0);
+        }
+        try {
+            JSONObject user = callDetailRequest(uid, new HttpGet(getConfiguration().getServiceAddress() + "/" + uid));
+            if (detailCache != null && user != null) {
+                detailCache.put(uid, user);
             }
-        } else {
-            value = getStringAttr(attributes, attrName);
+            return user;
+        } catch (IOException e) {
+            throw new ConnectorIOException(e.getMessage(), e);
+        }
+    }
+
+    private boolean isChanged(UserAttribute attribute, String value, JSONObject current) {
+        if (value == null) {
+            // not sent anyway
+            return false;
+        }
+        Object currentValue = attribute.read(current);
+        return currentValue == null || !value.equals(currentValue.toString());
+    }
+
+    /**
+     * @return value to send, role is taken also from roles (multivalue)
+     */
+    private void checkRequired(UserAttribute attribute, String value) {
+        if (attribute.isRequired() && StringUtil.isBlank(value)) {
+            throw new InvalidAttributeValueException("Missing mandatory attribute " + attribute.getName()
+                    + (attribute.getName().equals(attribute.getPath()) ? "" : " (" + attribute.getPath() + ")"));
         }
+    }
 
-        // handle also roles
-        if (ATTR_ROLE.equals(attrName)) {
-            String roles = getStrongestRole(getMultiValAttr(attributes, ATTR_ROLES, null));
+    private String getValue(IndexedAttributes attributes, UserAttribute attribute) {
+        String value = attributes.getString(attribute.getName());
+        if (ATTR_ROLE.equals(attribute.getName())) {
+            String roles = getStrongestRole(attributes.getStrings(ATTR_ROLES));
             if (roles != null) {
-                value = roles;
+                value = roles; // get value from multivalue
             }
         }
+        return value;
+    }
 
+    private void handlePatch(UserAttribute attribute, String value, JSONArray jo) {
+        // attribute without value is not sent, SmartRecruiters keeps the current value
         if (value != null) {
             // add or update value
             JSONObject op = new JSONObject();
             op.put("op", "add");
-            op.put("path", "/" + path);
+            op.put("path", "/" + attribute.getPath());
             op.put("value", value);
             jo.put(op);
-        } else if (attributes.contains(attrName) && value == null) {
-            // remove value
-            JSONObject op = new JSONObject();
-            op.put("op", "remove");
-            op.put("path", "/" + path);
-            jo.put(op);
-        }
-    }
-
-    private void handleLocation(Set<Attribute> attributes, JSONObject jo) {
-        JSONObject joLocation = new JSONObject();
-
-        putFieldIfExists(attributes, ATTR_LOCATION_COUNTRY, joLocation);
-        putFieldIfExists(attributes, ATTR_LOCATION_COUNTRY_COODE, joLocation);
-        putFieldIfExists(attributes, ATTR_LOCATION_REGION_CODE, joLocation);
-        putFieldIfExists(attributes, ATTR_LOCATION_REGION, joLocation);
-        putFieldIfExists(attributes, ATTR_LOCATION_CITY, joLocation);
-        putFieldIfExists(attributes, ATTR_LOCATION_ADDRESS, joLocation);
-        putFieldIfExists(attributes, ATTR_LOCATION_POSTAL_CODE, joLocation);
-        putFieldIfExists(attributes, ATTR_LOCATION_LONGITUDE, joLocation);
-        putFieldIfExists(attributes, ATTR_LOCATION_LATITUDE, joLocation);
-
-        if (joLocation.length() > 0) {
-            jo.append(ATTR_LOCATION, joLocation);
-        }
-    }
-
-    private void putFieldIfExists(Set<Attribute> attributes, String fieldName, JSONObject jo) {
-        String fieldValue = getStringAttr(attributes, fieldName);
-        if (fieldValue != null) {
-            jo.put(fieldName, fieldValue);
         }
     }
 
@@ -527,6 +817,12 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
         try {
             if (objectClass.is(ObjectClass.ACCOUNT_NAME)) {
                 LOG.ok("disable user instead of delete, Uid: {0}", uid);
+                if (validatorCache != null) {
+                    validatorCache.remove(uid.getUidValue());
+                }
+                if (detailCache != null) {
+                    detailCache.remove(uid.getUidValue());
+                }
                 HttpDelete request = new HttpDelete(getConfiguration().getServiceAddress() + "/" + uid.getUidValue() + "/activation");
                 callRequest(request, false);
             } else {
@@ -556,37 +852,42 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
         try {
             LOG.info("executeQuery on {0}, query: {1}, options: {2}", objectClass, query, options);
             if (objectClass.is(ObjectClass.ACCOUNT_NAME)) {
+                // attributes to convert, compiled once per search
+                AttributeProjection projection = AttributeProjection.of(options, query == null ? null : query.residual);
+                if (query != null && query.residual != null) {
+                    // conditions not supported by SmartRecruiters
+                    handler = new ResidualFilterHandler(handler, query.residual);
+                }
+
                 //find by Uid (user Primary Key)
                 if (query != null && query.byUid != null) {
                     HttpGet request = new HttpGet(getConfiguration().getServiceAddress() + "/" + query.byUid);
-                    JSONObject user = callRequest(request, true);
-                    ConnectorObject connectorObject = convertUserToConnectorObject(user);
+                    JSONObject user = callDetailRequest(query.byUid, request);
+                    if (detailCache != null) {
+                        detailCache.put(query.byUid, user);
+                    }
+                    indexUser(user);
+                    ConnectorObject connectorObject = convertUserToConnectorObject(user, projection);
                     handler.handle(connectorObject);
                     //find by emailAddress
                 } else if (query != null && query.byEmailAddress != null) {
                     HttpGet request = new HttpGet(getConfiguration().getServiceAddress() + "?q=" + URLEncoder.encode(query.byEmailAddress, "UTF-8"));
-                    handleUsers(request, handler, options, query);
+                    handleUsers(request, handler, projection, query);
+                    //find over full text search
+                } else if (query != null && query.byQuery != null) {
+                    handleAllUsers(0, "q=" + URLEncoder.encode(query.byQuery, "UTF-8"), handler, projection, query, null);
 
                 } else {
                     // find required page
                     String pageing = processPageOptions(options);
                     if (!StringUtil.isEmpty(pageing)) {
                         HttpGet request = new HttpGet(getConfiguration().getServiceAddress() + "?" + pageing);
-                        handleUsers(request, handler, options, null);
+                        handleUsers(request, handler, projection, null);
                     }
                     // find all
                     else {
-                        int pageSize = getConfiguration().getPageSize();
-                        int page = 0;
-                        while (true) {
-                            pageing = processPaging(page, pageSize);
-                            HttpGet request = new HttpGet(getConfiguration().getServiceAddress() + "?" + pageing);
-                            boolean finish = handleUsers(request, handler, options, null);
-                            if (finish) {
-                                break;
-                            }
-                            page++;
-                        }
+                        // users skipped by residual filter would be missing in the resumed listing
+                        handleAllUsers(handler, projection, query == null || query.residual == null ? getScanId(options) : null);
                     }
                 }
 
@@ -599,88 +900,980 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
         }
     }
 
-    private boolean handleUsers(HttpGet request, ResultsHandler handler, OperationOptions options, SmartRecruitersFilter query) throws IOException {
-        JSONObject result = callRequest(request);
-        LOG.ok("Number of users: {0}, offset: {1}, limit: {2} ", result.getInt("totalFound"), result.getInt("offset"), result.getInt("limit"));
+    @Override
+    public void sync(ObjectClass objectClass, SyncToken token, SyncResultsHandler handler, OperationOptions options) {
+        LOG.info("sync on {0}, token: {1}, options: {2}", objectClass, token, options);
+        if (!objectClass.is(ObjectClass.ACCOUNT_NAME)) {
+            throw new UnsupportedOperationException("Unsupported object class " + objectClass);
+        }
+
+        final SyncPosition after = token == null || token.getValue() == null ? null : SyncPosition.parse(String.valueOf(token.getValue()));
+        final List<JSONObject> changed = new ArrayList<JSONObject>();
+        try {
+            // list pages contains updatedOn, only changed users are kept and details are read only for them
+            listAllUsers(new UserPageReader.UserHandler() {
+                @Override
+                public boolean handle(JSONObject user) {
+                    SyncPosition position;
+                    try {
+                        position = SyncPosition.of(user);
+                    } catch (InvalidAttributeValueException e) {
+                        // one bad record must not block synchronization of the others
+                        LOG.warn("Skipping user {0} in sync: {1}", user.optString(ATTR_ID), e.getMessage());
+                        return true;
+                    }
+                    if (position != null && position.isAfter(after)) {
+                        changed.add(user);
+                    }
+                    return true;
+                }
+            });
+            LOG.ok("sync: {0} users changed after {1}", changed.size(), token);
 
-        JSONArray users = result.getJSONArray("content");
+            // oldest first (same time by id), every delta token is safe to continue from
+            Collections.sort(changed, new Comparator<JSONObject>() {
+                @Override
+                public int compare(JSONObject user1, JSONObject user2) {
+                    return SyncPosition.of(user1).compareTo(SyncPosition.of(user2));
+                }
+            });
 
-        for (int i = 0; i < users.length(); i++) {
-            if (i % 10 == 0) {
-                LOG.ok("executeQuery: processing {0}. of {1} users", i, users.length());
-            }
-            // only basic fields
-            JSONObject user = users.getJSONObject(i);
-            if (query != null && query.byEmailAddress != null && !user.getString(ATTR_EMAIL).equalsIgnoreCase(query.byEmailAddress)) {
-                LOG.info("Searching by e-mail {0} but not exact match found, ignoring user: {1}", query.byEmailAddress, user);
-                continue;
+            AttributeProjection projection = AttributeProjection.of(options, null);
+            boolean readDetail = locationToGet(projection);
+            for (JSONObject user : changed) {
+                SyncPosition position = SyncPosition.of(user);
+                if (readDetail) {
+                    user = readUserDetail(user, null);
+                }
+                SyncDeltaBuilder deltaBuilder = new SyncDeltaBuilder();
+                deltaBuilder.setDeltaType(SyncDeltaType.CREATE_OR_UPDATE);
+                deltaBuilder.setToken(new SyncToken(position.toToken()));
+                deltaBuilder.setObject(convertUserToConnectorObject(user, projection));
+                if (!handler.handle(deltaBuilder.build())) {
+                    LOG.ok("sync stopped by handler, last token: {0}", position);
+                    break;
+                }
             }
-            if (locationToGet(options)) {
-                HttpGet requestUserDetail = new HttpGet(getConfiguration().getServiceAddress() + "/" + user.getString(ATTR_ID));
-                user = callRequest(requestUserDetail, true);
+        } catch (IOException e) {
+            throw new ConnectorIOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return updatedOn of the latest changed user without its id, so users changed at the same time later
+     * are synchronized too
+     */
+    @Override
+    public SyncToken getLatestSyncToken(ObjectClass objectClass) {
+        if (!objectClass.is(ObjectClass.ACCOUNT_NAME)) {
+            throw new UnsupportedOperationException("Unsupported object class " + objectClass);
+        }
+        final SyncPosition[] latest = new SyncPosition[1];
+        try {
+            listAllUsers(new UserPageReader.UserHandler() {
+                @Override
+                public boolean handle(JSONObject user) {
+                    SyncPosition position = SyncPosition.of(user);
+                    if (position != null && position.isAfter(latest[0])) {
+                        latest[0] = position;
+                    }
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            throw new ConnectorIOException(e.getMessage(), e);
+        }
+        LOG.ok("latest sync token: {0}", latest[0]);
+        return latest[0] == null ? null : new SyncToken(latest[0].withoutId().toToken());
+    }
+
+    private void listAllUsers(UserPageReader.UserHandler handler) throws IOException {
+        int pageSize = getConfiguration().getPageSize();
+        int page = 0;
+        while (true) {
+            HttpGet request = new HttpGet(getConfiguration().getServiceAddress() + "?" + processPaging(page, pageSize));
+            UserPage userPage = callPageRequest(request, handler);
+            // stopped or last page exceed
+            if (userPage.isStopped() || pageSize > userPage.getCount()) {
+                return;
             }
+            page++;
+        }
+    }
 
-            ConnectorObject connectorObject = convertUserToConnectorObject(user);
-            boolean finish = !handler.handle(connectorObject);
+    private boolean handleUsers(HttpGet request, final ResultsHandler handler, final AttributeProjection projection, final SmartRecruitersFilter query) throws IOException {
+        UserPage page;
+        if (getConfiguration().getStreamListPages() && !locationToGet(projection)) {
+            // pass users to the handler while reading the response
+            long start = System.nanoTime();
+            final long[] handlerNanos = new long[1];
+            page = callPageRequest(request, new UserPageReader.UserHandler() {
+                @Override
+                public boolean handle(JSONObject user) throws IOException {
+                    if (isSkipped(user, query)) {
+                        return true;
+                    }
+                    long handlerStart = System.nanoTime();
+                    try {
+                        return handler.handle(convertUserToConnectorObject(user, projection));
+                    } finally {
+                        handlerNanos[0] += System.nanoTime() - handlerStart;
+                    }
+                }
+            });
+            metrics.pageRead(System.nanoTime() - start - handlerNanos[0]);
+            metrics.pageHandled(handlerNanos[0]);
+            LOG.ok("Number of users: {0}, offset: {1}, limit: {2} ", page.getTotalFound(), page.getOffset(), page.getLimit());
+            if (page.isStopped()) {
+                return true;
+            }
+        } else {
+            // response is released before the handler is called
+            page = readPage(request, query);
+            boolean finish = handlePage(page, handler, projection);
             if (finish) {
                 return true;
             }
         }
 
         // last page exceed
-        if (getConfiguration().getPageSize() > users.length()) {
+        if (getConfiguration().getPageSize() > page.getCount()) {
             return true;
         }
         // need next page
         return false;
     }
 
-    private ConnectorObject convertUserToConnectorObject(JSONObject user) throws IOException {
-        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
-        builder.setUid(new Uid(user.getString(ATTR_ID)));
-        if (user.has(ATTR_EMAIL)) {
-            builder.setName(user.getString(ATTR_EMAIL));
-        }
-        getIfExists(user, ATTR_FIRST_NAME, builder);
-        getIfExists(user, ATTR_LAST_NAME, builder);
-        getIfExists(user, ATTR_EXTERNAL_DATA, builder);
-        getIfExists(user, ATTR_UPDATED_ON, builder);
-        getIfExists(user, ATTR_SSO_IDENTIFIER, builder);
-        getIfExists(user, ATTR_ROLE, builder);
+    private UserPage readPage(HttpGet request, SmartRecruitersFilter query) throws IOException {
+        return readPage(request, null, query);
+    }
 
-        // role also as roles (multivalue)
-        if (user.has(ATTR_ROLE)) {
-            if (user.get(ATTR_ROLE) != null && !JSONObject.NULL.equals(user.get(ATTR_ROLE))) {
-                addAttr(builder, ATTR_ROLES, user.getString(ATTR_ROLE));
+    /**
+     * Reads list page and collects its users (only basic fields).
+     *
+     * @param response successful response already received over the async transport, or null to send the request
+     */
+    private UserPage readPage(HttpGet request, CloseableHttpResponse response, final SmartRecruitersFilter query) throws IOException {
+        long start = System.nanoTime();
+        final List<JSONObject> users = new ArrayList<JSONObject>();
+        UserPageReader.UserHandler collector = new UserPageReader.UserHandler() {
+            @Override
+            public boolean handle(JSONObject user) {
+                if (!isSkipped(user, query)) {
+                    users.add(user);
+                }
+                return true;
             }
-        }
+        };
+        UserPage page = response == null ? callPageRequest(request, collector) : readPageResponse(response, collector);
+        page.setUsers(users);
+        metrics.pageRead(System.nanoTime() - start);
+        LOG.ok("Number of users: {0}, offset: {1}, limit: {2} ", page.getTotalFound(), page.getOffset(), page.getLimit());
+        return page;
+    }
 
-        // location part
-        if (user.has(ATTR_LOCATION)) {
-            JSONObject location = user.getJSONObject(ATTR_LOCATION);
-            getIfExists(location, ATTR_LOCATION_COUNTRY, builder);
-            getIfExists(location, ATTR_LOCATION_COUNTRY_COODE, builder);
-            getIfExists(location, ATTR_LOCATION_REGION_CODE, builder);
-            getIfExists(location, ATTR_LOCATION_REGION, builder);
-            getIfExists(location, ATTR_LOCATION_CITY, builder);
-            getIfExists(location, ATTR_LOCATION_ADDRESS, builder);
-            getIfExists(location, ATTR_LOCATION_POSTAL_CODE, builder);
-            getIfExists(location, ATTR_LOCATION_LONGITUDE, builder);
-            getIfExists(location, ATTR_LOCATION_LATITUDE, builder);
+    /**
+     * Passes collected users of the page to the handler, details are read when needed.
+     *
+     * @return true, if the handler stopped the search
+     */
+    private boolean handlePage(UserPage page, ResultsHandler handler, AttributeProjection projection) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return handleUsers(page.getUsers(), handler, projection);
+        } finally {
+            metrics.pageHandled(System.nanoTime() - start);
         }
+    }
 
-        if (user.has(ATTR_ACTIVE)) {
-            boolean enable = user.getBoolean(ATTR_ACTIVE);
-            addAttr(builder, OperationalAttributes.ENABLE_NAME, enable);
+    private boolean handleUsers(List<JSONObject> users, ResultsHandler handler, AttributeProjection projection) throws IOException {
+        boolean readDetail = locationToGet(projection);
+
+        if (readDetail && (getConfiguration().getDetailFetchThreads() > 1 || asyncTransport != null)) {
+            // details are read in parallel
+            return handleUserDetails(users, handler, projection);
         }
 
-        ConnectorObject connectorObject = builder.build();
-        LOG.ok("convertUserToConnectorObject, user: {0}, \n\tconnectorObject: {1}",
-                user.getString(ATTR_ID), connectorObject);
-        return connectorObject;
-    }
+        for (int i = 0; i < users.size(); i++) {
+            if (i % 10 == 0) {
+                messageLog.user("executeQuery: processing {0}. of {1} users", i, users.size());
+            }
+            JSONObject user = users.get(i);
+            if (readDetail) {
+                user = readUserDetail(user, null);
+            }
 
-    private String processPageOptions(OperationOptions options) {
+            ConnectorObject connectorObject = convertUserToConnectorObject(user, projection);
+            boolean finish = !handler.handle(connectorObject);
+            if (finish) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return id of the scan to checkpoint and resume, given in {@link #OP_SCAN_ID} option, or null
+     */
+    private String getScanId(OperationOptions options) {
+        if (options == null) {
+            return null;
+        }
+        Object scanId = options.getOptions().get(OP_SCAN_ID);
+        return scanId == null || StringUtil.isBlank(scanId.toString()) ? null : scanId.toString();
+    }
+
+    /**
+     * Lists all users with configured strategy (parallel, read ahead or sequential). Listing with a scan id
+     * continues from the checkpoint of the previous listing with the same id when it failed.
+     * When the handler did not stop listing, e-mail index is complete.
+     *
+     * @param scanId id of the scan given by the caller, or null when the listing is not checkpointed
+     */
+    private void handleAllUsers(final ResultsHandler handler, AttributeProjection projection, String scanId) throws IOException {
+        long scanStart = System.currentTimeMillis();
+        ScanCheckpoint checkpoint = null;
+        if (scanId != null && !StringUtil.isEmpty(getConfiguration().getCheckpointDirectory())) {
+            checkpoint = ScanCheckpoint.open(getConfiguration().getCheckpointDirectory(), getConfiguration().getServiceAddress(),
+                    scanId, getConfiguration().getPageSize(), getConfiguration().getCheckpointTtl() * 1000L);
+        }
+        int firstPage = checkpoint == null ? 0 : checkpoint.getFirstPage();
+        final boolean[] stopped = {false};
+        ResultsHandler scanHandler = new ResultsHandler() {
+            @Override
+            public boolean handle(ConnectorObject connectorObject) {
+                boolean next = handler.handle(connectorObject);
+                if (!next) {
+                    stopped[0] = true;
+                }
+                return next;
+            }
+        };
+
+        if (getConfiguration().getPageFetchThreads() > 1) {
+            // pages are read in parallel
+            handleAllUsersParallel(firstPage, scanHandler, projection, checkpoint);
+        } else if (getConfiguration().getPageReadAhead() > 0) {
+            // next pages are read while handling current page
+            handleAllUsersReadAhead(firstPage, scanHandler, projection, checkpoint);
+        } else {
+            handleAllUsers(firstPage, scanHandler, projection, checkpoint);
+        }
+
+        if (checkpoint != null) {
+            checkpoint.completed();
+        }
+        // resumed listing did not see users before the checkpoint
+        if (emailIndex != null && !stopped[0] && firstPage == 0) {
+            emailIndex.scanCompleted(scanStart);
+        }
+    }
+
+    private void handleAllUsers(int firstPage, ResultsHandler handler, AttributeProjection projection, ScanCheckpoint checkpoint) throws IOException {
+        handleAllUsers(firstPage, "", handler, projection, null, checkpoint);
+    }
+
+    /**
+     * @param search     search parameters (q=) or empty string for all users
+     * @param checkpoint progress of listing all users, or null
+     */
+    private void handleAllUsers(int firstPage, String search, ResultsHandler handler, AttributeProjection projection, SmartRecruitersFilter query,
+                                ScanCheckpoint checkpoint) throws IOException {
+        int pageSize = getConfiguration().getPageSize();
+        int page = firstPage;
+        while (true) {
+            String pageing = search + processPaging(page, pageSize);
+            HttpGet request = new HttpGet(getConfiguration().getServiceAddress() + "?" + pageing);
+            boolean finish = handleUsers(request, handler, projection, query);
+            if (finish) {
+                break;
+            }
+            if (checkpoint != null) {
+                checkpoint.pageCompleted(page);
+            }
+            page++;
+        }
+    }
+
+    /**
+     * Lists all users, pages after the first one are computed from its totalFound and read in parallel
+     * by pageFetchThreads workers. When the last computed page is still full (users were added during the scan),
+     * the rest is read sequentially.
+     */
+    private void handleAllUsersParallel(int firstPage, ResultsHandler handler, AttributeProjection projection, ScanCheckpoint checkpoint) throws IOException {
+        int pageSize = getConfiguration().getPageSize();
+        int threads = getConfiguration().getPageFetchThreads();
+
+        UserPage first = readPage(new HttpGet(getConfiguration().getServiceAddress() + "?" + processPaging(firstPage, pageSize)), null);
+        if (handlePage(first, handler, projection) || pageSize > first.getCount()) {
+            return;
+        }
+        if (checkpoint != null) {
+            checkpoint.pageCompleted(firstPage);
+        }
+
+        int totalFound = first.getTotalFound();
+        int nextPage = firstPage + 1;
+        int lastPage = firstPage;
+        boolean lastPageFull = true;
+        boolean ordered = getConfiguration().getOrderedResults();
+
+        ExecutorService executor = asyncTransport == null ? getPageExecutor() : null;
+        BlockingQueue<Future<UserPage>> completed = ordered ? null : new LinkedBlockingQueue<Future<UserPage>>();
+        LinkedList<Future<UserPage>> inFlight = new LinkedList<Future<UserPage>>();
+        Map<Future<UserPage>, PageFetch> fetches = new HashMap<Future<UserPage>, PageFetch>();
+        try {
+            while (true) {
+                while (inFlight.size() < threads && nextPage * pageSize < totalFound) {
+                    PageFetch fetch = new PageFetch(nextPage, pageSize);
+                    Future<UserPage> future = submit(fetch, executor, completed);
+                    inFlight.add(future);
+                    fetches.put(future, fetch);
+                    nextPage++;
+                }
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+
+                Future<UserPage> done = ordered ? inFlight.getFirst() : completed.take();
+                inFlight.remove(done);
+                PageFetch fetch = fetches.remove(done);
+                UserPage page = awaitPage(done);
+                LOG.ok("parallel listing: page {0} read, {1} pages in flight", fetch.page, inFlight.size());
+
+                // total can change during the scan
+                if (page.getTotalFound() > totalFound) {
+                    totalFound = page.getTotalFound();
+                }
+                if (fetch.page > lastPage) {
+                    lastPage = fetch.page;
+                    lastPageFull = page.getCount() >= pageSize;
+                }
+
+                if (handlePage(page, handler, projection)) {
+                    return;
+                }
+                if (checkpoint != null) {
+                    checkpoint.pageCompleted(fetch.page);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorIOException("Interrupted when reading users", e);
+        } finally {
+            // handler stopped the search or some request failed - don't wait for the rest
+            for (Future<UserPage> future : inFlight) {
+                if (future.cancel(true)) {
+                    fetches.get(future).abort();
+                }
+            }
+        }
+
+        if (lastPageFull) {
+            LOG.ok("parallel listing: last page {0} is full, continue sequentially", lastPage);
+            handleAllUsers(lastPage + 1, handler, projection, checkpoint);
+        }
+    }
+
+    private UserPage awaitPage(Future<UserPage> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            rethrow(e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * Reads one list page.
+     */
+    private class PageFetch extends Fetch<UserPage> {
+        private final int page;
+
+        PageFetch(int page, int pageSize) {
+            super(new HttpGet(getConfiguration().getServiceAddress() + "?" + processPaging(page, pageSize)));
+            this.page = page;
+        }
+
+        @Override
+        public UserPage call() throws IOException {
+            return readPage(request, null);
+        }
+
+        @Override
+        UserPage read(CloseableHttpResponse response) throws IOException {
+            processSmartRecruiterResponseErrors(response, null, null);
+            return readPage(request, response, null);
+        }
+    }
+
+    /**
+     * Lists all users, up to pageReadAhead next pages are read in background while the current page is handled.
+     * Reader waits when the queue is full, so at most pageReadAhead + 2 pages are held in memory.
+     */
+    private void handleAllUsersReadAhead(int firstPage, ResultsHandler handler, AttributeProjection projection, ScanCheckpoint checkpoint) throws IOException {
+        int pageSize = getConfiguration().getPageSize();
+        BlockingQueue<PrefetchedPage> queue = new ArrayBlockingQueue<PrefetchedPage>(getConfiguration().getPageReadAhead());
+        PageProducer producer = new PageProducer(queue, firstPage, pageSize);
+        Future<?> future = getPageExecutor().submit(producer);
+        try {
+            int page = firstPage;
+            while (true) {
+                PrefetchedPage prefetched = queue.take();
+                if (prefetched.error != null) {
+                    rethrow(prefetched.error);
+                }
+                boolean finish = handlePage(prefetched.page, handler, projection);
+                // stopped or last page exceed
+                if (finish || pageSize > prefetched.page.getCount()) {
+                    return;
+                }
+                if (checkpoint != null) {
+                    checkpoint.pageCompleted(page);
+                }
+                page++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorIOException("Interrupted when reading users", e);
+        } finally {
+            if (future.cancel(true)) {
+                producer.abort();
+            }
+        }
+    }
+
+    private void rethrow(Throwable error) throws IOException {
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        throw new ConnectorIOException(error.getMessage(), error);
+    }
+
+    private static class PrefetchedPage {
+        private final UserPage page;
+        private final Throwable error;
+
+        PrefetchedPage(UserPage page, Throwable error) {
+            this.page = page;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Reads list pages to the queue until the last page or the first error.
+     */
+    private class PageProducer implements Runnable {
+        private final BlockingQueue<PrefetchedPage> queue;
+        private final int firstPage;
+        private final int pageSize;
+        private volatile HttpGet request;
+
+        PageProducer(BlockingQueue<PrefetchedPage> queue, int firstPage, int pageSize) {
+            this.queue = queue;
+            this.firstPage = firstPage;
+            this.pageSize = pageSize;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int page = firstPage;
+                while (!Thread.currentThread().isInterrupted()) {
+                    request = new HttpGet(getConfiguration().getServiceAddress() + "?" + processPaging(page, pageSize));
+                    UserPage userPage;
+                    try {
+                        userPage = readPage(request, null);
+                    } catch (Throwable t) {
+                        queue.put(new PrefetchedPage(null, t));
+                        return;
+                    }
+                    queue.put(new PrefetchedPage(userPage, null));
+                    // last page exceed
+                    if (pageSize > userPage.getCount()) {
+                        return;
+                    }
+                    page++;
+                }
+            } catch (InterruptedException e) {
+                // search finished, nothing more to read
+                LOG.ok("page reading interrupted");
+            }
+        }
+
+        void abort() {
+            HttpGet current = request;
+            if (current != null) {
+                current.abort();
+            }
+        }
+    }
+
+    /**
+     * Passes to the handler only users matching the condition which was not searched by SmartRecruiters.
+     */
+    private static class ResidualFilterHandler implements ResultsHandler {
+        private final ResultsHandler handler;
+        private final Filter residual;
+
+        ResidualFilterHandler(ResultsHandler handler, Filter residual) {
+            this.handler = handler;
+            this.residual = residual;
+        }
+
+        @Override
+        public boolean handle(ConnectorObject connectorObject) {
+            if (!residual.accept(connectorObject)) {
+                return true;
+            }
+            return handler.handle(connectorObject);
+        }
+    }
+
+    private void indexUser(JSONObject user) {
+        if (emailIndex != null && user.has(ATTR_EMAIL) && user.has(ATTR_ID)) {
+            emailIndex.put(user.optString(ATTR_EMAIL, null), user.optString(ATTR_ID, null));
+        }
+    }
+
+    private boolean isSkipped(JSONObject user, SmartRecruitersFilter query) {
+        if (query != null && query.byEmailAddress != null && !user.getString(ATTR_EMAIL).equalsIgnoreCase(query.byEmailAddress)) {
+            LOG.info("Searching by e-mail {0} but not exact match found, ignoring user: {1}", query.byEmailAddress, user);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads user detail from the cache when the updatedOn from the list page is the same, otherwise over the REST API.
+     *
+     * @param request prepared request, or null to create it here
+     */
+    private JSONObject readUserDetail(JSONObject listUser, HttpGet request) throws IOException {
+        String uid = listUser.getString(ATTR_ID);
+        if (detailCache != null) {
+            JSONObject cached = detailCache.get(uid, listUser.optString(ATTR_UPDATED_ON, null));
+            if (cached != null) {
+                return cached;
+            }
+        }
+        if (request == null) {
+            request = new HttpGet(getConfiguration().getServiceAddress() + "/" + uid);
+        }
+        JSONObject user = callDetailRequest(uid, request);
+        if (detailCache != null) {
+            detailCache.put(uid, user);
+        }
+        return user;
+    }
+
+    /**
+     * Reads user detail, conditionally when validators of the user are cached.
+     */
+    private JSONObject callDetailRequest(String uid, HttpGet request) throws IOException {
+        ValidatorCache.Entry validated = addValidators(uid, request);
+        LOG.ok("request URI: {0}", request.getURI());
+        request.setHeader("Content-Type", CONTENT_TYPE_JSON);
+        CloseableHttpResponse response = executeRequest(request);
+        LOG.ok("response: {0}", response);
+        return readDetailResponse(uid, validated, response);
+    }
+
+    /**
+     * Adds If-None-Match and If-Modified-Since of the cached user to the request.
+     *
+     * @return cached validators and user, or null when the request is not conditional
+     */
+    private ValidatorCache.Entry addValidators(String uid, HttpGet request) {
+        if (validatorCache == null) {
+            return null;
+        }
+        ValidatorCache.Entry validated = validatorCache.get(uid);
+        if (validated == null) {
+            return null;
+        }
+        if (validated.getEtag() != null) {
+            request.setHeader(HEADER_IF_NONE_MATCH, validated.getEtag());
+        }
+        if (validated.getLastModified() != null) {
+            request.setHeader(HEADER_IF_MODIFIED_SINCE, validated.getLastModified());
+        }
+        return validated;
+    }
+
+    /**
+     * Reads user from the detail response, 304 Not Modified is answered by the cached user, validators
+     * of a full response are cached.
+     */
+    private JSONObject readDetailResponse(String uid, ValidatorCache.Entry validated, CloseableHttpResponse response) throws IOException {
+        if (validated != null && response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+            closeResponse(response);
+            validatorCache.notModified();
+            return validated.getUser();
+        }
+        processSmartRecruiterResponseErrors(response, null, null);
+        Header etag = response.getFirstHeader(HEADER_ETAG);
+        Header lastModified = response.getFirstHeader(HEADER_LAST_MODIFIED);
+        JSONObject user = readJson(response);
+        if (validatorCache != null) {
+            if (validated != null) {
+                validatorCache.modified();
+            }
+            validatorCache.put(uid, etag == null ? null : etag.getValue(), lastModified == null ? null : lastModified.getValue(), user);
+        }
+        return user;
+    }
+
+    /**
+     * Reads details of the users in parallel and passes them to the handler, in page order or as soon as they
+     * are read (see {@link SmartRecruitersConfiguration#getOrderedResults()}).
+     *
+     * @return true, if the handler stopped the search
+     */
+    private boolean handleUserDetails(List<JSONObject> users, ResultsHandler handler, AttributeProjection projection) throws IOException {
+        LOG.ok("handleUserDetails: reading {0} users with {1}", users.size(),
+                asyncTransport != null ? "async transport" : getConfiguration().getDetailFetchThreads() + " threads");
+        ExecutorService executor = asyncTransport == null ? getDetailExecutor() : null;
+        boolean ordered = getConfiguration().getOrderedResults();
+        BlockingQueue<Future<JSONObject>> completed = ordered ? null : new LinkedBlockingQueue<Future<JSONObject>>();
+        List<DetailFetch> fetches = new ArrayList<DetailFetch>(users.size());
+        List<Future<JSONObject>> futures = new ArrayList<Future<JSONObject>>(users.size());
+        try {
+            for (JSONObject user : users) {
+                DetailFetch fetch = new DetailFetch(user);
+                fetches.add(fetch);
+                futures.add(submit(fetch, executor, completed));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Future<JSONObject> done = ordered ? futures.get(i) : completed.take();
+                ConnectorObject connectorObject = convertUserToConnectorObject(awaitDetail(done), projection);
+                if (!handler.handle(connectorObject)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConnectorIOException("Interrupted when reading user details", e);
+        } finally {
+            // handler stopped the search or some request failed - don't wait for the rest
+            for (int i = 0; i < futures.size(); i++) {
+                if (futures.get(i).cancel(true)) {
+                    fetches.get(i).abort();
+                }
+            }
+        }
+    }
+
+    private JSONObject awaitDetail(Future<JSONObject> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            rethrow(e.getCause());
+            return null;
+        }
+    }
+
+    private synchronized ExecutorService getDetailExecutor() {
+        if (detailExecutor == null) {
+            detailExecutor = ExecutorFactory.newExecutor("smartrecruiters-detail-", getConfiguration().getDetailFetchThreads(),
+                    getConfiguration().getVirtualThreads());
+        }
+        return detailExecutor;
+    }
+
+    private synchronized ExecutorService getPageExecutor() {
+        if (pageExecutor == null) {
+            // number of pages in flight is limited by the caller
+            pageExecutor = ExecutorFactory.newExecutor("smartrecruiters-page-", 0, getConfiguration().getVirtualThreads());
+        }
+        return pageExecutor;
+    }
+
+    /**
+     * Starts the fetch on the executor, or sends it over the async transport without occupying a thread.
+     *
+     * @param executor  executor of the blocking transport, null with the async transport
+     * @param completed queue receiving the futures as they complete, or null
+     */
+    private <T> Future<T> submit(Fetch<T> fetch, ExecutorService executor, final BlockingQueue<Future<T>> completed) throws InterruptedException {
+        if (asyncTransport != null) {
+            AsyncFetch<T> future = new AsyncFetch<T>(fetch, completed);
+            future.send();
+            return future;
+        }
+        FutureTask<T> task = completed == null ? new FutureTask<T>(fetch) : new FutureTask<T>(fetch) {
+            @Override
+            protected void done() {
+                completed.add(this);
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * One GET of the parallel reading, the request can be aborted when the result is not needed anymore.
+     */
+    private abstract class Fetch<T> implements Callable<T> {
+        protected final HttpGet request;
+
+        Fetch(HttpGet request) {
+            this.request = request;
+        }
+
+        /**
+         * @return result available without a request, or null
+         */
+        T cached() {
+            return null;
+        }
+
+        /**
+         * Called before the request is sent over the async transport.
+         */
+        void prepare() {
+        }
+
+        /**
+         * Reads the result from the final response of the request sent over the async transport.
+         */
+        abstract T read(CloseableHttpResponse response) throws IOException;
+
+        void abort() {
+            request.abort();
+        }
+    }
+
+    /**
+     * Reads one user detail.
+     */
+    private class DetailFetch extends Fetch<JSONObject> {
+        private final JSONObject listUser;
+        private ValidatorCache.Entry validated;
+
+        DetailFetch(JSONObject listUser) {
+            super(new HttpGet(getConfiguration().getServiceAddress() + "/" + listUser.getString(ATTR_ID)));
+            this.listUser = listUser;
+        }
+
+        @Override
+        public JSONObject call() throws IOException {
+            return readUserDetail(listUser, request);
+        }
+
+        @Override
+        JSONObject cached() {
+            if (detailCache == null) {
+                return null;
+            }
+            return detailCache.get(listUser.getString(ATTR_ID), listUser.optString(ATTR_UPDATED_ON, null));
+        }
+
+        @Override
+        void prepare() {
+            validated = addValidators(listUser.getString(ATTR_ID), request);
+        }
+
+        @Override
+        JSONObject read(CloseableHttpResponse response) throws IOException {
+            JSONObject user = readDetailResponse(listUser.getString(ATTR_ID), validated, response);
+            if (detailCache != null) {
+                detailCache.put(listUser.getString(ATTR_ID), user);
+            }
+            return user;
+        }
+    }
+
+    /**
+     * Fetch sent over the async transport, the response is read by the thread calling {@link #get()}.
+     * The response or I/O error is handled as the first attempt of {@link #executeRequest(HttpRequestBase)},
+     * so throttling and retries are counted the same way as with the blocking transport, the repeated requests
+     * are sent by the reading thread. Fetch not sent because of open circuit breaker is repeated
+     * by the blocking {@link Fetch#call()}. Request allowed by the circuit breaker which is not sent, is cancelled
+     * or whose response is not read anymore releases the breaker, its half-open trial must not stay running.
+     */
+    private class AsyncFetch<T> implements Future<T>, FutureCallback<HttpResponse> {
+        private final Fetch<T> fetch;
+        private final BlockingQueue<Future<T>> completed;
+        private final Endpoint endpoint;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Future<HttpResponse> future;
+        private volatile HttpResponse response;
+        private volatile ConnectorIOException error;
+        private volatile boolean cancelled;
+        private final AtomicBoolean allowed = new AtomicBoolean();
+        private long start;
+        private T cached;
+
+        AsyncFetch(Fetch<T> fetch, BlockingQueue<Future<T>> completed) {
+            this.fetch = fetch;
+            this.completed = completed;
+            this.endpoint = Endpoint.of(fetch.request, getConfiguration().getServiceAddress());
+        }
+
+        void send() throws InterruptedException {
+            cached = fetch.cached();
+            if (cached != null || !retryPolicy.getCircuitBreaker(endpoint).allowRequest()) {
+                complete();
+                return;
+            }
+            allowed.set(true);
+            boolean sent = false;
+            try {
+                rateLimiter.acquire();
+                asyncPermits.acquire();
+                try {
+                    fetch.prepare();
+                    LOG.ok("request URI: {0}, async", fetch.request.getURI());
+                    fetch.request.setHeader("Content-Type", CONTENT_TYPE_JSON);
+                    if (getConfiguration().getResponseCompression()) {
+                        fetch.request.setHeader(ResponseCompression.ACCEPT_ENCODING, ResponseCompression.SUPPORTED_ENCODINGS);
+                    }
+                    start = System.nanoTime();
+                    future = asyncTransport.execute(fetch.request, this);
+                    sent = true;
+                } finally {
+                    if (!sent) {
+                        asyncPermits.release();
+                    }
+                }
+            } finally {
+                if (!sent) {
+                    releaseCircuitBreaker();
+                }
+            }
+        }
+
+        /**
+         * Request allowed by the circuit breaker ends without outcome.
+         */
+        private void releaseCircuitBreaker() {
+            if (allowed.compareAndSet(true, false)) {
+                retryPolicy.getCircuitBreaker(endpoint).release();
+            }
+        }
+
+        @Override
+        public void completed(HttpResponse result) {
+            int statusCode = result.getStatusLine().getStatusCode();
+            metrics.response(endpoint, fetch.request.getMethod(), System.nanoTime() - start, statusCode, 0);
+            response = result;
+            asyncPermits.release();
+            complete();
+        }
+
+        @Override
+        public void failed(Exception e) {
+            metrics.failure(endpoint, fetch.request.getMethod(), System.nanoTime() - start, 0);
+            error = new ConnectorIOException(e.getMessage(), e);
+            asyncPermits.release();
+            complete();
+        }
+
+        @Override
+        public void cancelled() {
+            asyncPermits.release();
+            releaseCircuitBreaker();
+            complete();
+        }
+
+        private void complete() {
+            done.countDown();
+            if (completed != null) {
+                completed.add(this);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            Future<HttpResponse> sent = future;
+            boolean cancelledNow = sent != null && sent.cancel(mayInterruptIfRunning);
+            // response received before cancel is not read anymore
+            releaseCircuitBreaker();
+            if (!cancelledNow) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            done.await();
+            return read();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException("Waiting for " + fetch.request.getURI());
+            }
+            return read();
+        }
+
+        private T read() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (cached != null) {
+                return cached;
+            }
+            try {
+                HttpResponse result = response;
+                if (result == null && error == null) {
+                    return fetch.call();
+                }
+                // outcome of the allowed request is given by executeRequest
+                allowed.set(false);
+                CloseableHttpResponse received = executeRequest(fetch.request,
+                        result == null ? null : new AsyncTransport.BufferedResponse(result), error);
+                LOG.ok("response: {0}", received);
+                return fetch.read(received);
+            } catch (Exception e) {
+                throw new ExecutionException(e);
+            }
+        }
+    }
+
+    private ConnectorObject convertUserToConnectorObject(JSONObject user, AttributeProjection projection) throws IOException {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setUid(new Uid(user.getString(ATTR_ID)));
+        if (user.has(ATTR_EMAIL)) {
+            builder.setName(user.getString(ATTR_EMAIL));
+        }
+        for (UserAttribute attribute : UserAttribute.readable()) {
+            if (projection.contains(attribute.getName())) {
+                Object value = attribute.read(user);
+                if (value != null) {
+                    addAttr(builder, attribute.getName(), value);
+                }
+            }
+        }
+
+        ConnectorObject connectorObject = builder.build();
+        messageLog.user("convertUserToConnectorObject, user: {0}, \n\tconnectorObject: {1}",
+                connectorObject.getUid().getUidValue(), connectorObject);
+        return connectorObject;
+    }
+
+    private String processPageOptions(OperationOptions options) {
         if (options != null) {
             Integer pageSize = options.getPageSize();
             Integer pagedResultsOffset = options.getPagedResultsOffset();
@@ -745,59 +1938,10 @@ public class SmartRecruitersConnector extends AbstractRestConnector<SmartRecruit
         return null;
     }
 
-    private void getIfExists(JSONObject object, String attrName, ConnectorObjectBuilder builder) {
-        if (object.has(attrName)) {
-            if (object.get(attrName) != null && !JSONObject.NULL.equals(object.get(attrName))) {
-                addAttr(builder, attrName, object.getString(attrName));
-            }
-        }
-    }
-
-
-    private boolean locationToGet(OperationOptions options) {
+    private boolean locationToGet(AttributeProjection projection) {
         if (!getConfiguration().getReadLocation()) {
             return false;
         }
-
-        if (options == null) {
-            // not configured, get all data
-            return true;
-        }
-        String[] attrsToGet = options.getAttributesToGet();
-        if (attrsToGet == null) {
-            // not configured, get all data
-            return true;
-        }
-        for (String attrToGet : attrsToGet) {
-            if (ATTR_LOCATION_COUNTRY.equals(attrToGet)) {
-                return true;
-            }
-            if (ATTR_LOCATION_COUNTRY_COODE.equals(attrToGet)) {
-                return true;
-            }
-            if (ATTR_LOCATION_REGION_CODE.equals(attrToGet)) {
-                return true;
-            }
-            if (ATTR_LOCATION_REGION.equals(attrToGet)) {
-                return true;
-            }
-            if (ATTR_LOCATION_CITY.equals(attrToGet)) {
-                return true;
-            }
-            if (ATTR_LOCATION_ADDRESS.equals(attrToGet)) {
-                return true;
-            }
-            if (ATTR_LOCATION_POSTAL_CODE.equals(attrToGet)) {
-                return true;
-            }
-            if (ATTR_LOCATION_LONGITUDE.equals(attrToGet)) {
-                return true;
-            }
-            if (ATTR_LOCATION_LATITUDE.equals(attrToGet)) {
-                return true;
-            }
-        }
-
-        return false;
+        return projection.containsLocation();
     }
 }
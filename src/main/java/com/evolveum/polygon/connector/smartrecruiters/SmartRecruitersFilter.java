@@ -1,17 +1,40 @@
 package com.evolveum.polygon.connector.smartrecruiters;
 
+import org.identityconnectors.framework.common.objects.filter.Filter;
+
 /**
  * @author gpalos
  */
 public class SmartRecruitersFilter {
     public String byUid;
     public String byEmailAddress;
+    /**
+     * full text search (q=) returning superset of matching users
+     */
+    public String byQuery;
+    /**
+     * condition not handled by SmartRecruiters, evaluated on returned users
+     */
+    public Filter residual;
+    /**
+     * whole condition represented by this filter
+     */
+    public Filter source;
+
+    /**
+     * @return true, if some condition is handled by SmartRecruiters
+     */
+    public boolean isPushedDown() {
+        return byUid != null || byEmailAddress != null || byQuery != null;
+    }
 
     @Override
     public String toString() {
         return "SmartRecruitersFilter{" +
                 "byUid=" + byUid +
                 ", byEmailAddress='" + byEmailAddress + '\'' +
+                ", byQuery='" + byQuery + '\'' +
+                ", residual=" + residual +
                 '}';
     }
 }
@@ -19,10 +19,12 @@ import org.identityconnectors.common.logging.Log;
 import org.identityconnectors.framework.common.objects.Attribute;
 import org.identityconnectors.framework.common.objects.Name;
 import org.identityconnectors.framework.common.objects.Uid;
-import org.identityconnectors.framework.common.objects.filter.AbstractFilterTranslator;
-import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.*;
 
 /**
+ * Uid and e-mail are searched directly, first and last name over full text search (q=).
+ * Other conditions (starts with, contains, comparisons, role, active, ...) are evaluated on the listed users.
+ *
  * @author gpalos
  */
 public class SmartRecruitersFilterTranslator extends AbstractFilterTranslator<SmartRecruitersFilter> {
@@ -33,26 +35,118 @@ public class SmartRecruitersFilterTranslator extends AbstractFilterTranslator<Sm
         LOG.ok("createEqualsExpression, filter: {0}, not: {1}", filter, not);
 
         if (not) {
-            return null;            // not supported
+            return residual(FilterBuilder.not(filter));
         }
 
         Attribute attr = filter.getAttribute();
         LOG.ok("attr.getName:  {0}, attr.getValue: {1}, Uid.NAME: {2}, Name.NAME: {3}", attr.getName(), attr.getValue(), Uid.NAME, Name.NAME);
+        if (attr.getValue() == null || attr.getValue().isEmpty() || attr.getValue().get(0) == null) {
+            return residual(filter);
+        }
         if (Uid.NAME.equals(attr.getName())) {
-            if (attr.getValue() != null && attr.getValue().get(0) != null) {
-                SmartRecruitersFilter lf = new SmartRecruitersFilter();
-                lf.byUid = String.valueOf(attr.getValue().get(0));
-                LOG.ok("lf.byUid: {0}, attr.getValue().get(0): {1}", lf.byUid, attr.getValue().get(0));
-                return lf;
-            }
+            SmartRecruitersFilter lf = new SmartRecruitersFilter();
+            lf.byUid = String.valueOf(attr.getValue().get(0));
+            lf.source = filter;
+            LOG.ok("lf.byUid: {0}, attr.getValue().get(0): {1}", lf.byUid, attr.getValue().get(0));
+            return lf;
         } else if (Name.NAME.equals(attr.getName())) {
-            if (attr.getValue() != null && attr.getValue().get(0) != null) {
-                SmartRecruitersFilter lf = new SmartRecruitersFilter();
-                lf.byEmailAddress = String.valueOf(attr.getValue().get(0));
-                return lf;
-            }
+            SmartRecruitersFilter lf = new SmartRecruitersFilter();
+            lf.byEmailAddress = String.valueOf(attr.getValue().get(0));
+            lf.source = filter;
+            return lf;
+        } else if (SmartRecruitersConnector.ATTR_FIRST_NAME.equals(attr.getName())
+                || SmartRecruitersConnector.ATTR_LAST_NAME.equals(attr.getName())) {
+            // full text search returns also other users, exact match is checked locally
+            SmartRecruitersFilter lf = residual(filter);
+            lf.byQuery = String.valueOf(attr.getValue().get(0));
+            return lf;
         }
 
-        return null;            // not supported
+        return residual(filter);
+    }
+
+    @Override
+    protected SmartRecruitersFilter createStartsWithExpression(StartsWithFilter filter, boolean not) {
+        return residual(not ? FilterBuilder.not(filter) : filter);
+    }
+
+    @Override
+    protected SmartRecruitersFilter createEndsWithExpression(EndsWithFilter filter, boolean not) {
+        return residual(not ? FilterBuilder.not(filter) : filter);
+    }
+
+    @Override
+    protected SmartRecruitersFilter createContainsExpression(ContainsFilter filter, boolean not) {
+        return residual(not ? FilterBuilder.not(filter) : filter);
+    }
+
+    @Override
+    protected SmartRecruitersFilter createContainsAllValuesExpression(ContainsAllValuesFilter filter, boolean not) {
+        return residual(not ? FilterBuilder.not(filter) : filter);
+    }
+
+    @Override
+    protected SmartRecruitersFilter createGreaterThanExpression(GreaterThanFilter filter, boolean not) {
+        return residual(not ? FilterBuilder.not(filter) : filter);
+    }
+
+    @Override
+    protected SmartRecruitersFilter createGreaterThanOrEqualExpression(GreaterThanOrEqualFilter filter, boolean not) {
+        return residual(not ? FilterBuilder.not(filter) : filter);
+    }
+
+    @Override
+    protected SmartRecruitersFilter createLessThanExpression(LessThanFilter filter, boolean not) {
+        return residual(not ? FilterBuilder.not(filter) : filter);
+    }
+
+    @Override
+    protected SmartRecruitersFilter createLessThanOrEqualExpression(LessThanOrEqualFilter filter, boolean not) {
+        return residual(not ? FilterBuilder.not(filter) : filter);
+    }
+
+    @Override
+    protected SmartRecruitersFilter createAndExpression(SmartRecruitersFilter left, SmartRecruitersFilter right) {
+        // most selective condition is searched, the other one is evaluated locally
+        SmartRecruitersFilter primary = rank(left) >= rank(right) ? left : right;
+        SmartRecruitersFilter other = primary == left ? right : left;
+
+        SmartRecruitersFilter lf = new SmartRecruitersFilter();
+        lf.byUid = primary.byUid;
+        lf.byEmailAddress = primary.byEmailAddress;
+        lf.byQuery = primary.byQuery;
+        lf.residual = primary.residual == null ? other.source : FilterBuilder.and(primary.residual, other.source);
+        lf.source = FilterBuilder.and(left.source, right.source);
+        LOG.ok("createAndExpression: {0}", lf);
+        return lf;
+    }
+
+    @Override
+    protected SmartRecruitersFilter createOrExpression(SmartRecruitersFilter left, SmartRecruitersFilter right) {
+        if (left.isPushedDown() && right.isPushedDown()) {
+            // both parts are searched separately
+            return null;
+        }
+        return residual(FilterBuilder.or(left.source, right.source));
+    }
+
+    private SmartRecruitersFilter residual(Filter filter) {
+        SmartRecruitersFilter lf = new SmartRecruitersFilter();
+        lf.residual = filter;
+        lf.source = filter;
+        return lf;
+    }
+
+    private int rank(SmartRecruitersFilter filter) {
+        if (filter.byUid != null) {
+            return 3;
+        }
+        if (filter.byEmailAddress != null) {
+            return 2;
+        }
+        if (filter.byQuery != null) {
+            return 1;
+        }
+        return 0;
     }
 }
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
+import org.json.JSONObject;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Position of a user change, changes are ordered by updatedOn and then by user id, so users updated at the same time
+ * have a stable order. Sync token is "updatedOn|id" of the last handled user. Token without id (token of older
+ * connector version or from {@link SmartRecruitersConnector#getLatestSyncToken}) is before all users updated
+ * at its time, they are synchronized again rather than lost.
+ *
+ * @author gpalos
+ */
+public class SyncPosition implements Comparable<SyncPosition> {
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * date and time, optional fraction of second, time zone
+     */
+    private static final Pattern UPDATED_ON = Pattern.compile("(\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2})(?:\\.(\\d+))?(.*)");
+
+    private static final String[] ZONE_FORMATS = {"yyyy-MM-dd'T'HH:mm:ss.SSSXXX", "yyyy-MM-dd'T'HH:mm:ss.SSSXX", "yyyy-MM-dd'T'HH:mm:ss.SSSX"};
+
+    private final String updatedOn;
+    private final long time;
+    private final String id;
+
+    SyncPosition(String updatedOn, String id) {
+        this.updatedOn = updatedOn;
+        this.time = parseUpdatedOn(updatedOn);
+        this.id = id;
+    }
+
+    /**
+     * @return position of the user, null when the user has no updatedOn
+     */
+    public static SyncPosition of(JSONObject user) {
+        String updatedOn = user.optString(SmartRecruitersConnector.ATTR_UPDATED_ON, null);
+        if (updatedOn == null) {
+            return null;
+        }
+        return new SyncPosition(updatedOn, user.optString(SmartRecruitersConnector.ATTR_ID, null));
+    }
+
+    /**
+     * @param token "updatedOn|id" or only "updatedOn"
+     */
+    public static SyncPosition parse(String token) {
+        int separator = token.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return new SyncPosition(token, null);
+        }
+        return new SyncPosition(token.substring(0, separator), token.substring(separator + SEPARATOR.length()));
+    }
+
+    /**
+     * @return position before all users updated at the same time as this one
+     */
+    public SyncPosition withoutId() {
+        return new SyncPosition(updatedOn, null);
+    }
+
+    public String getUpdatedOn() {
+        return updatedOn;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return value of the sync token
+     */
+    public String toToken() {
+        return id == null ? updatedOn : updatedOn + SEPARATOR + id;
+    }
+
+    /**
+     * @return true, if the change is after the token position and was not synchronized yet
+     */
+    public boolean isAfter(SyncPosition token) {
+        return token == null || compareTo(token) > 0;
+    }
+
+    @Override
+    public int compareTo(SyncPosition other) {
+        if (time != other.time) {
+            return time < other.time ? -1 : 1;
+        }
+        // position without id is before all users of its time
+        if (id == null || other.id == null) {
+            return id == null ? (other.id == null ? 0 : -1) : 1;
+        }
+        return id.compareTo(other.id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SyncPosition && compareTo((SyncPosition) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (time ^ (time >>> 32)) * 31 + (id == null ? 0 : id.hashCode());
+    }
+
+    /**
+     * Parses ISO 8601 updatedOn, fraction of second is cut or padded to milliseconds.
+     *
+     * @return milliseconds since epoch
+     */
+    public static long parseUpdatedOn(String updatedOn) {
+        Matcher matcher = UPDATED_ON.matcher(updatedOn.trim());
+        if (matcher.matches()) {
+            String fraction = matcher.group(2) == null ? "" : matcher.group(2);
+            fraction = fraction.length() >= 3 ? fraction.substring(0, 3) : (fraction + "000").substring(0, 3);
+            String normalized = matcher.group(1) + "." + fraction + matcher.group(3);
+            for (String format : ZONE_FORMATS) {
+                SimpleDateFormat dateFormat = new SimpleDateFormat(format);
+                dateFormat.setLenient(false);
+                ParsePosition position = new ParsePosition(0);
+                Date date = dateFormat.parse(normalized, position);
+                // whole value, not only its prefix
+                if (date != null && position.getIndex() == normalized.length()) {
+                    return date.getTime();
+                }
+            }
+        }
+        throw new InvalidAttributeValueException("Unsupported format of " + SmartRecruitersConnector.ATTR_UPDATED_ON + ": " + updatedOn);
+    }
+
+    @Override
+    public String toString() {
+        return toToken();
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.io.IOException;
+
+/**
+ * Sends HTTP requests to SmartRecruiters. Requests and responses are HttpCore messages: method, URI, headers
+ * and body bytes (entity) of the request, status, headers and streamed body of the response. Retries, rate limiting
+ * and error handling are done by the connector, transport only sends the request once.
+ *
+ * @author gpalos
+ */
+public interface Transport {
+
+    /**
+     * Sends the request and waits for the response status and headers, body can be still streamed
+     * from the server. Request authentication is added by the transport.
+     */
+    CloseableHttpResponse send(HttpRequestBase request) throws IOException;
+
+    /**
+     * Called when the connector instance is disposed, shared transports are closed with the last instance.
+     */
+    void release();
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.objects.AttributeInfo;
+import org.identityconnectors.framework.common.objects.AttributeInfoBuilder;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.OperationalAttributeInfos;
+import org.identityconnectors.framework.common.objects.OperationalAttributes;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Attributes of the SmartRecruiters user, one definition drives create, patch, conversion to the connector object
+ * and the schema.
+ *
+ * @author gpalos
+ */
+public final class UserAttribute {
+
+    /**
+     * sent in POST when creating the user
+     */
+    private static final int CREATE = 1;
+    /**
+     * sent in PATCH when updating the user
+     */
+    private static final int UPDATE = 1 << 1;
+    /**
+     * mandatory when creating the user
+     */
+    private static final int REQUIRED = 1 << 2;
+    /**
+     * converted from the user JSON to the connector object
+     */
+    private static final int READ = 1 << 3;
+    private static final int RETURNED_BY_DEFAULT = 1 << 4;
+    private static final int MULTI_VALUED = 1 << 5;
+    /**
+     * defined in the schema
+     */
+    private static final int SCHEMA = 1 << 6;
+
+    private static final int STRING = CREATE | UPDATE | READ | RETURNED_BY_DEFAULT | SCHEMA;
+    /**
+     * location is available only in the user detail
+     */
+    private static final int LOCATION = CREATE | UPDATE | READ | SCHEMA;
+
+    private static final List<UserAttribute> ALL;
+    private static final List<UserAttribute> READABLE;
+    private static final Map<String, UserAttribute> BY_NAME;
+
+    static {
+        List<UserAttribute> all = new ArrayList<UserAttribute>();
+        // UID is the id, NAME (email) and PASSWORD are in the schema by default
+        all.add(new UserAttribute(Name.NAME, SmartRecruitersConnector.ATTR_EMAIL, String.class, CREATE | UPDATE | REQUIRED));
+        all.add(new UserAttribute(SmartRecruitersConnector.ATTR_FIRST_NAME, String.class, STRING | REQUIRED));
+        all.add(new UserAttribute(SmartRecruitersConnector.ATTR_LAST_NAME, String.class, STRING | REQUIRED));
+        all.add(new UserAttribute(SmartRecruitersConnector.ATTR_ROLE, String.class, STRING | REQUIRED));
+        // roles are written as the strongest role
+        all.add(new UserAttribute(SmartRecruitersConnector.ATTR_ROLES, SmartRecruitersConnector.ATTR_ROLE, String.class, STRING | MULTI_VALUED));
+        all.add(new UserAttribute(SmartRecruitersConnector.ATTR_EXTERNAL_DATA, String.class, STRING));
+        all.add(new UserAttribute(SmartRecruitersConnector.ATTR_UPDATED_ON, String.class, STRING)); // read only?
+        all.add(new UserAttribute(SmartRecruitersConnector.ATTR_SSO_IDENTIFIER, String.class, STRING));
+
+        all.add(location(SmartRecruitersConnector.ATTR_LOCATION_COUNTRY));
+        all.add(location(SmartRecruitersConnector.ATTR_LOCATION_COUNTRY_COODE));
+        all.add(location(SmartRecruitersConnector.ATTR_LOCATION_REGION_CODE));
+        all.add(location(SmartRecruitersConnector.ATTR_LOCATION_REGION));
+        all.add(location(SmartRecruitersConnector.ATTR_LOCATION_CITY));
+        all.add(location(SmartRecruitersConnector.ATTR_LOCATION_ADDRESS));
+        all.add(location(SmartRecruitersConnector.ATTR_LOCATION_POSTAL_CODE));
+        all.add(location(SmartRecruitersConnector.ATTR_LOCATION_LONGITUDE));
+        all.add(location(SmartRecruitersConnector.ATTR_LOCATION_LATITUDE));
+
+        // read only and only when conflict is detected
+        all.add(new UserAttribute(SmartRecruitersConnector.ATTR_EMAIL_CONFLICT, null, Boolean.class, SCHEMA));
+        // written over activation requests
+        all.add(new UserAttribute(OperationalAttributes.ENABLE_NAME, SmartRecruitersConnector.ATTR_ACTIVE, Boolean.class,
+                READ | RETURNED_BY_DEFAULT, OperationalAttributeInfos.ENABLE));
+        // sent after the other fields, never logged
+        all.add(new UserAttribute(OperationalAttributes.PASSWORD_NAME, SmartRecruitersConnector.ATTR_PASSWORD, GuardedString.class, CREATE | UPDATE));
+
+        List<UserAttribute> readable = new ArrayList<UserAttribute>();
+        Map<String, UserAttribute> byName = new HashMap<String, UserAttribute>();
+        for (UserAttribute attribute : all) {
+            if (attribute.is(READ)) {
+                readable.add(attribute);
+            }
+            byName.put(attribute.name, attribute);
+        }
+        ALL = Collections.unmodifiableList(all);
+        READABLE = Collections.unmodifiableList(readable);
+        BY_NAME = Collections.unmodifiableMap(byName);
+    }
+
+    private final String name;
+    /**
+     * path in the user JSON, null when not stored in the user
+     */
+    private final String path;
+    /**
+     * object holding the value, null when the value is stored directly in the user
+     */
+    private final String parent;
+    private final String field;
+    private final Class<?> type;
+    private final int flags;
+    private final AttributeInfo info;
+
+    private UserAttribute(String name, Class<?> type, int flags) {
+        this(name, name, type, flags);
+    }
+
+    private UserAttribute(String name, String path, Class<?> type, int flags) {
+        this(name, path, type, flags, null);
+    }
+
+    private UserAttribute(String name, String path, Class<?> type, int flags, AttributeInfo info) {
+        this.name = name;
+        this.path = path;
+        this.type = type;
+        this.flags = flags;
+        int separator = path == null ? -1 : path.indexOf('/');
+        this.parent = separator < 0 ? null : path.substring(0, separator);
+        this.field = separator < 0 ? path : path.substring(separator + 1);
+        if (info == null && is(SCHEMA)) {
+            AttributeInfoBuilder builder = new AttributeInfoBuilder(name, type);
+            builder.setCreateable(is(CREATE));
+            builder.setUpdateable(is(UPDATE));
+            builder.setReturnedByDefault(is(RETURNED_BY_DEFAULT));
+            builder.setMultiValued(is(MULTI_VALUED));
+            info = builder.build();
+        }
+        this.info = info;
+    }
+
+    private static UserAttribute location(String name) {
+        return new UserAttribute(name, SmartRecruitersConnector.ATTR_LOCATION + "/" + name, String.class, LOCATION);
+    }
+
+    /**
+     * @return all attributes in the order used for requests
+     */
+    public static List<UserAttribute> all() {
+        return ALL;
+    }
+
+    /**
+     * @return attributes converted from the user JSON
+     */
+    public static List<UserAttribute> readable() {
+        return READABLE;
+    }
+
+    /**
+     * @return attribute definition or null, when not known
+     */
+    public static UserAttribute get(String name) {
+        return BY_NAME.get(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return name of the nested object in the user JSON or null
+     */
+    public String getParent() {
+        return parent;
+    }
+
+    /**
+     * @return field name in the user JSON or in the nested object
+     */
+    public String getField() {
+        return field;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * @return schema definition or null, when not defined explicitly
+     */
+    public AttributeInfo getInfo() {
+        return info;
+    }
+
+    public boolean isCreateable() {
+        return is(CREATE);
+    }
+
+    public boolean isUpdateable() {
+        return is(UPDATE);
+    }
+
+    public boolean isRequired() {
+        return is(REQUIRED);
+    }
+
+    public boolean isMultiValued() {
+        return is(MULTI_VALUED);
+    }
+
+    public boolean isPassword() {
+        return GuardedString.class.equals(type);
+    }
+
+    /**
+     * @return true, if the value is available only in the user detail
+     */
+    public boolean isDetailOnly() {
+        return SmartRecruitersConnector.ATTR_LOCATION.equals(parent);
+    }
+
+    /**
+     * @return value from the user JSON or null, when not set
+     */
+    public Object read(JSONObject user) {
+        JSONObject object = parent == null ? user : user.optJSONObject(parent);
+        if (object == null || field == null || !object.has(field) || object.isNull(field)) {
+            return null;
+        }
+        if (Boolean.class.equals(type)) {
+            return object.getBoolean(field);
+        }
+        return object.getString(field);
+    }
+
+    private boolean is(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "UserAttribute{" +
+                "name='" + name + '\'' +
+                ", path='" + path + '\'' +
+                ", type=" + type.getSimpleName() +
+                '}';
+    }
+}
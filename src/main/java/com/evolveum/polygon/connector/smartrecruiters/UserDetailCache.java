@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of user details (GET /{id}) shared by all connector instances of the same service address.
+ * Entry is valid only while the updatedOn value from the list page is the same and TTL is not expired.
+ *
+ * @author gpalos
+ */
+public class UserDetailCache {
+
+    private static final Map<String, UserDetailCache> CACHES = new HashMap<String, UserDetailCache>();
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private int maxSize;
+    private long ttlMillis;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    UserDetailCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Returns cache for the service address, limits are updated from the latest configuration.
+     */
+    public static UserDetailCache getInstance(String serviceAddress, int maxSize, long ttlMillis) {
+        synchronized (CACHES) {
+            UserDetailCache cache = CACHES.get(serviceAddress);
+            if (cache == null) {
+                cache = new UserDetailCache(maxSize, ttlMillis);
+                CACHES.put(serviceAddress, cache);
+            } else {
+                cache.resize(maxSize, ttlMillis);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * @return cached user detail or null, if not cached, expired or updatedOn differs
+     */
+    public synchronized JSONObject get(String uid, String updatedOn) {
+        Entry entry = entries.get(uid);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (isExpired(entry)) {
+            entries.remove(uid);
+            evictions.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        if (updatedOn == null || !updatedOn.equals(entry.updatedOn)) {
+            // changed since cached
+            entries.remove(uid);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.user;
+    }
+
+    /**
+     * @return cached user detail without checking updatedOn or null, if not cached or expired
+     */
+    public synchronized JSONObject get(String uid) {
+        Entry entry = entries.get(uid);
+        if (entry == null || isExpired(entry)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.user;
+    }
+
+    public synchronized void put(String uid, JSONObject user) {
+        String updatedOn = user.optString(SmartRecruitersConnector.ATTR_UPDATED_ON, null);
+        if (updatedOn == null) {
+            return;
+        }
+        entries.put(uid, new Entry(updatedOn, user, System.currentTimeMillis()));
+        evictOverLimit();
+    }
+
+    public synchronized void remove(String uid) {
+        entries.remove(uid);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+        statistics.put("size", (long) size());
+        statistics.put("hits", getHits());
+        statistics.put("misses", getMisses());
+        statistics.put("evictions", getEvictions());
+        return statistics;
+    }
+
+    private synchronized void resize(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        evictOverLimit();
+    }
+
+    private void evictOverLimit() {
+        while (entries.size() > maxSize) {
+            // least recently used first
+            String eldest = entries.keySet().iterator().next();
+            entries.remove(eldest);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        return ttlMillis > 0 && System.currentTimeMillis() - entry.created > ttlMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "UserDetailCache{" +
+                "size=" + size() +
+                ", maxSize=" + maxSize +
+                ", ttlMillis=" + ttlMillis +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+
+    private static class Entry {
+        private final String updatedOn;
+        private final JSONObject user;
+        private final long created;
+
+        Entry(String updatedOn, JSONObject user, long created) {
+            this.updatedOn = updatedOn;
+            this.user = user;
+            this.created = created;
+        }
+    }
+}
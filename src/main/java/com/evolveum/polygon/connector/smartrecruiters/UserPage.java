@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Paging information of one list response, users are passed to {@link UserPageReader.UserHandler}
+ * or collected in {@link #getUsers()} when the page is read before handling.
+ *
+ * @author gpalos
+ */
+public class UserPage {
+
+    private int totalFound = -1;
+    private int offset = -1;
+    private int limit = -1;
+    private int count;
+    private boolean stopped;
+    private List<JSONObject> users;
+
+    public int getTotalFound() {
+        return totalFound;
+    }
+
+    void setTotalFound(int totalFound) {
+        this.totalFound = totalFound;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * @return number of users read from the content array
+     */
+    public int getCount() {
+        return count;
+    }
+
+    void incrementCount() {
+        count++;
+    }
+
+    /**
+     * @return true, if the handler stopped reading before the end of the page
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    void setStopped(boolean stopped) {
+        this.stopped = stopped;
+    }
+
+    /**
+     * @return users collected from the page (only basic fields), null if they were passed directly to the handler
+     */
+    public List<JSONObject> getUsers() {
+        return users;
+    }
+
+    void setUsers(List<JSONObject> users) {
+        this.users = users;
+    }
+
+    @Override
+    public String toString() {
+        return "UserPage{" +
+                "totalFound=" + totalFound +
+                ", offset=" + offset +
+                ", limit=" + limit +
+                ", count=" + count +
+                ", stopped=" + stopped +
+                '}';
+    }
+}
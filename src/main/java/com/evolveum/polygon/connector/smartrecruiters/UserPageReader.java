@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads list response (totalFound, offset, limit, content) directly from the response stream
+ * and passes users from the content array one by one to the handler, whole page is never held in memory.
+ *
+ * @author gpalos
+ */
+public class UserPageReader {
+
+    private static final String CONTENT = "content";
+    private static final String TOTAL_FOUND = "totalFound";
+    private static final String OFFSET = "offset";
+    private static final String LIMIT = "limit";
+
+    /**
+     * Handler of the users from list pages (only basic fields).
+     */
+    public interface UserHandler {
+        /**
+         * @return false to stop reading
+         */
+        boolean handle(JSONObject user) throws IOException;
+    }
+
+    private final JSONTokener tokener;
+
+    public UserPageReader(Reader reader) {
+        this.tokener = new JSONTokener(reader);
+    }
+
+    public UserPage read(UserHandler handler) throws IOException {
+        UserPage page = new UserPage();
+        if (tokener.nextClean() != '{') {
+            throw tokener.syntaxError("A JSON object text must begin with '{'");
+        }
+        while (true) {
+            char c = tokener.nextClean();
+            if (c == '}') {
+                return page;
+            }
+            if (c == ',') {
+                continue;
+            }
+            if (c != '"' && c != '\'') {
+                throw tokener.syntaxError("Expected a key");
+            }
+            String key = tokener.nextString(c);
+            if (tokener.nextClean() != ':') {
+                throw tokener.syntaxError("Expected a ':' after a key");
+            }
+
+            if (CONTENT.equals(key)) {
+                readContent(handler, page);
+                if (page.isStopped()) {
+                    return page;
+                }
+            } else {
+                Object value = tokener.nextValue();
+                if (value instanceof Number) {
+                    int number = ((Number) value).intValue();
+                    if (TOTAL_FOUND.equals(key)) {
+                        page.setTotalFound(number);
+                    } else if (OFFSET.equals(key)) {
+                        page.setOffset(number);
+                    } else if (LIMIT.equals(key)) {
+                        page.setLimit(number);
+                    }
+                }
+            }
+        }
+    }
+
+    private void readContent(UserHandler handler, UserPage page) throws IOException {
+        if (tokener.nextClean() != '[') {
+            // null or unexpected value, nothing to read
+            tokener.back();
+            tokener.nextValue();
+            return;
+        }
+        while (true) {
+            char c = tokener.nextClean();
+            if (c == ']') {
+                return;
+            }
+            if (c == ',') {
+                continue;
+            }
+            tokener.back();
+            Object value = tokener.nextValue();
+            if (!(value instanceof JSONObject)) {
+                throw tokener.syntaxError("Expected user object in " + CONTENT);
+            }
+            page.incrementCount();
+            if (!handler.handle((JSONObject) value)) {
+                page.setStopped(true);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of HTTP validators (ETag, Last-Modified) with the user detail they belong to, shared by all
+ * connector instances of the same service address. Unlike {@link UserDetailCache} entries don't expire,
+ * every use is confirmed by the server with a conditional request (304 Not Modified).
+ *
+ * @author gpalos
+ */
+public class ValidatorCache {
+
+    private static final Map<String, ValidatorCache> CACHES = new HashMap<String, ValidatorCache>();
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private int maxSize;
+
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong modified = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    ValidatorCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns cache for the service address, size is updated from the latest configuration.
+     */
+    public static ValidatorCache getInstance(String serviceAddress, int maxSize) {
+        synchronized (CACHES) {
+            ValidatorCache cache = CACHES.get(serviceAddress);
+            if (cache == null) {
+                cache = new ValidatorCache(maxSize);
+                CACHES.put(serviceAddress, cache);
+            } else {
+                cache.resize(maxSize);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * @return validators and user detail to send conditional request for, or null
+     */
+    public synchronized Entry get(String uid) {
+        return entries.get(uid);
+    }
+
+    /**
+     * Stores validators of the response, responses without any validator are not cached.
+     */
+    public synchronized void put(String uid, String etag, String lastModified, JSONObject user) {
+        if (etag == null && lastModified == null) {
+            entries.remove(uid);
+            return;
+        }
+        entries.put(uid, new Entry(etag, lastModified, user));
+        evictOverLimit();
+    }
+
+    public synchronized void remove(String uid) {
+        entries.remove(uid);
+    }
+
+    /**
+     * Conditional request answered with 304, cached user was used.
+     */
+    public void notModified() {
+        notModified.incrementAndGet();
+    }
+
+    /**
+     * Conditional request answered with the full user.
+     */
+    public void modified() {
+        modified.incrementAndGet();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+        statistics.put("size", (long) size());
+        statistics.put("notModified", notModified.get());
+        statistics.put("modified", modified.get());
+        statistics.put("evictions", evictions.get());
+        return statistics;
+    }
+
+    private synchronized void resize(int maxSize) {
+        this.maxSize = maxSize;
+        evictOverLimit();
+    }
+
+    private void evictOverLimit() {
+        while (entries.size() > maxSize) {
+            // least recently used first
+            String eldest = entries.keySet().iterator().next();
+            entries.remove(eldest);
+            evictions.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ValidatorCache{" +
+                "size=" + size() +
+                ", maxSize=" + maxSize +
+                ", notModified=" + notModified +
+                ", modified=" + modified +
+                ", evictions=" + evictions +
+                '}';
+    }
+
+    public static class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final JSONObject user;
+
+        Entry(String etag, String lastModified, JSONObject user) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.user = user;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public JSONObject getUser() {
+            return user;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.OperationalAttributes;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author gpalos
+ */
+public class AttributeProjectionTest {
+
+    private OperationOptions attributesToGet(String... attributes) {
+        return new OperationOptionsBuilder().setAttributesToGet(attributes).build();
+    }
+
+    @Test
+    public void testAllWithoutAttributesToGet() {
+        Assert.assertSame(AttributeProjection.of(null, null), AttributeProjection.ALL);
+        Assert.assertSame(AttributeProjection.of(new OperationOptionsBuilder().build(), null), AttributeProjection.ALL);
+
+        Assert.assertTrue(AttributeProjection.ALL.contains(SmartRecruitersConnector.ATTR_ROLE));
+        Assert.assertTrue(AttributeProjection.ALL.containsLocation());
+    }
+
+    @Test
+    public void testOnlyRequestedAttributes() {
+        AttributeProjection projection = AttributeProjection.of(
+                attributesToGet(SmartRecruitersConnector.ATTR_FIRST_NAME, OperationalAttributes.ENABLE_NAME), null);
+
+        Assert.assertTrue(projection.contains(SmartRecruitersConnector.ATTR_FIRST_NAME));
+        Assert.assertTrue(projection.contains(OperationalAttributes.ENABLE_NAME));
+        Assert.assertFalse(projection.contains(SmartRecruitersConnector.ATTR_LAST_NAME));
+        // location is read only from the user detail
+        Assert.assertFalse(projection.containsLocation());
+    }
+
+    @Test
+    public void testLocationAttribute() {
+        AttributeProjection projection = AttributeProjection.of(attributesToGet(SmartRecruitersConnector.ATTR_LOCATION_CITY), null);
+
+        Assert.assertTrue(projection.containsLocation());
+    }
+
+    @Test
+    public void testResidualFilterAttributesAreIncluded() {
+        Filter residual = FilterBuilder.and(
+                FilterBuilder.equalTo(AttributeBuilder.build(SmartRecruitersConnector.ATTR_ROLE, "ADMINISTRATOR")),
+                FilterBuilder.or(
+                        FilterBuilder.not(FilterBuilder.startsWith(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LAST_NAME, "D"))),
+                        FilterBuilder.equalTo(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LOCATION_CITY, "Bratislava"))));
+        AttributeProjection projection = AttributeProjection.of(attributesToGet(SmartRecruitersConnector.ATTR_FIRST_NAME), residual);
+
+        Assert.assertTrue(projection.contains(SmartRecruitersConnector.ATTR_FIRST_NAME));
+        Assert.assertTrue(projection.contains(SmartRecruitersConnector.ATTR_ROLE));
+        Assert.assertTrue(projection.contains(SmartRecruitersConnector.ATTR_LAST_NAME));
+        // filter on location needs the user detail
+        Assert.assertTrue(projection.containsLocation());
+        Assert.assertFalse(projection.contains(SmartRecruitersConnector.ATTR_EXTERNAL_DATA));
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author gpalos
+ */
+public class CircuitBreakerTest {
+
+    private CircuitBreaker open(CircuitBreaker breaker, int failures) {
+        for (int i = 0; i < failures; i++) {
+            Assert.assertTrue(breaker.allowRequest());
+            breaker.failure();
+        }
+        return breaker;
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 60000);
+        open(breaker, 2);
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+
+        breaker.failure();
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+        Assert.assertFalse(breaker.allowRequest());
+        Assert.assertFalse(breaker.allowRequest());
+        Assert.assertEquals(breaker.getOpened(), 1);
+        Assert.assertEquals(breaker.getRejected(), 2);
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 60000);
+        open(breaker, 2);
+        breaker.success();
+        open(breaker, 2);
+
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+        Assert.assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testNeverOpensWithoutThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 0, 60000);
+        open(breaker, 100);
+
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+        Assert.assertEquals(breaker.getOpened(), 0);
+    }
+
+    @Test
+    public void testOneTrialAfterOpenTime() throws Exception {
+        CircuitBreaker breaker = open(new CircuitBreaker("test", 1, 20), 1);
+        Thread.sleep(40);
+
+        Assert.assertTrue(breaker.allowRequest());
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.HALF_OPEN);
+        // only one trial request at a time
+        Assert.assertFalse(breaker.allowRequest());
+
+        breaker.success();
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+        Assert.assertTrue(breaker.allowRequest());
+        Assert.assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testFailedTrialOpensAgain() throws Exception {
+        CircuitBreaker breaker = open(new CircuitBreaker("test", 3, 20), 3);
+        Thread.sleep(40);
+
+        Assert.assertTrue(breaker.allowRequest());
+        breaker.failure();
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+        Assert.assertEquals(breaker.getOpened(), 2);
+        Assert.assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void testReleasedTrialAllowsNextTrial() throws Exception {
+        CircuitBreaker breaker = open(new CircuitBreaker("test", 1, 20), 1);
+        Thread.sleep(40);
+
+        Assert.assertTrue(breaker.allowRequest());
+        breaker.release();
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.HALF_OPEN);
+        Assert.assertTrue(breaker.allowRequest());
+        Assert.assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void testReleaseOfClosedCircuit() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 60000);
+        Assert.assertTrue(breaker.allowRequest());
+        breaker.release();
+
+        Assert.assertEquals(breaker.getState(), CircuitBreaker.State.CLOSED);
+        Assert.assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void testSharedPerServiceAddressAndEndpoint() {
+        String serviceAddress = "http://circuit-breaker-test/" + System.nanoTime();
+        CircuitBreaker list = CircuitBreaker.getInstance(serviceAddress, Endpoint.LIST, 1, 60000);
+
+        Assert.assertSame(CircuitBreaker.getInstance(serviceAddress, Endpoint.LIST, 1, 60000), list);
+        Assert.assertNotSame(CircuitBreaker.getInstance(serviceAddress, Endpoint.DETAIL, 1, 60000), list);
+        Assert.assertNotSame(CircuitBreaker.getInstance(serviceAddress + "/other", Endpoint.LIST, 1, 60000), list);
+
+        // configuration of the last instance is used
+        CircuitBreaker.getInstance(serviceAddress, Endpoint.LIST, 0, 60000);
+        open(list, 5);
+        Assert.assertEquals(list.getState(), CircuitBreaker.State.CLOSED);
+    }
+}
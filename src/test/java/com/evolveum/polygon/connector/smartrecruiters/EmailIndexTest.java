@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author gpalos
+ */
+public class EmailIndexTest {
+
+    private static final long HOUR = 3600000L;
+
+    @Test
+    public void testCaseInsensitive() {
+        EmailIndex index = new EmailIndex(HOUR);
+        index.put("John.Doe@Example.com", "5a1b");
+
+        Assert.assertEquals(index.getUid("john.doe@example.com"), "5a1b");
+        Assert.assertEquals(index.getUid("JOHN.DOE@EXAMPLE.COM"), "5a1b");
+        Assert.assertNull(index.getUid("jane.doe@example.com"));
+        Assert.assertNull(index.getUid(null));
+    }
+
+    @Test
+    public void testIncompleteValuesAreIgnored() {
+        EmailIndex index = new EmailIndex(HOUR);
+        index.put(null, "5a1b");
+        index.put("john.doe@example.com", null);
+
+        Assert.assertEquals(index.size(), 0);
+    }
+
+    @Test
+    public void testRemoveUidRemovesAllItsEmails() {
+        EmailIndex index = new EmailIndex(HOUR);
+        index.put("old@example.com", "5a1b");
+        index.put("new@example.com", "5a1b");
+        index.put("other@example.com", "5a1c");
+
+        index.removeUid("5a1b");
+        Assert.assertNull(index.getUid("old@example.com"));
+        Assert.assertNull(index.getUid("new@example.com"));
+        Assert.assertEquals(index.getUid("other@example.com"), "5a1c");
+    }
+
+    @Test
+    public void testNotKnownAbsentBeforeCompleteScan() {
+        EmailIndex index = new EmailIndex(HOUR);
+        index.put("john.doe@example.com", "5a1b");
+
+        Assert.assertFalse(index.isKnownAbsent("jane.doe@example.com"));
+    }
+
+    @Test
+    public void testKnownAbsentAfterCompleteScan() {
+        EmailIndex index = new EmailIndex(HOUR);
+        index.put("john.doe@example.com", "5a1b");
+        index.scanCompleted(System.currentTimeMillis());
+
+        Assert.assertTrue(index.isKnownAbsent("jane.doe@example.com"));
+        Assert.assertFalse(index.isKnownAbsent("John.Doe@example.com"));
+        Assert.assertFalse(index.isKnownAbsent(null));
+    }
+
+    @Test
+    public void testStaleScan() {
+        EmailIndex index = new EmailIndex(HOUR);
+        index.scanCompleted(System.currentTimeMillis() - 2 * HOUR);
+        Assert.assertFalse(index.isKnownAbsent("jane.doe@example.com"));
+
+        // older scan does not replace the newer one
+        long now = System.currentTimeMillis();
+        index.scanCompleted(now);
+        index.scanCompleted(now - 2 * HOUR);
+        Assert.assertTrue(index.isKnownAbsent("jane.doe@example.com"));
+    }
+
+    @Test
+    public void testWithoutStalenessNothingIsKnownAbsent() throws Exception {
+        EmailIndex index = new EmailIndex(0);
+        index.scanCompleted(System.currentTimeMillis());
+        Thread.sleep(5);
+
+        Assert.assertFalse(index.isKnownAbsent("jane.doe@example.com"));
+    }
+
+    @Test
+    public void testSharedPerServiceAddress() {
+        String serviceAddress = "http://email-index-test/" + System.nanoTime();
+        EmailIndex index = EmailIndex.getInstance(serviceAddress, HOUR);
+        index.put("john.doe@example.com", "5a1b");
+
+        Assert.assertSame(EmailIndex.getInstance(serviceAddress, HOUR), index);
+        Assert.assertNull(EmailIndex.getInstance(serviceAddress + "/other", HOUR).getUid("john.doe@example.com"));
+
+        // staleness of the last instance is used
+        index.scanCompleted(System.currentTimeMillis() - 1000);
+        Assert.assertTrue(index.isKnownAbsent("jane.doe@example.com"));
+        EmailIndex.getInstance(serviceAddress, 10);
+        Assert.assertFalse(index.isKnownAbsent("jane.doe@example.com"));
+    }
+}
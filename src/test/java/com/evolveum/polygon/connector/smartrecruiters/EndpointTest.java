@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author gpalos
+ */
+public class EndpointTest {
+
+    private static final String SERVICE_ADDRESS = "https://api.smartrecruiters.com/users";
+
+    @Test
+    public void testOf() {
+        Assert.assertEquals(Endpoint.of(new HttpGet(SERVICE_ADDRESS + "/me"), SERVICE_ADDRESS), Endpoint.ME);
+        Assert.assertEquals(Endpoint.of(new HttpGet(SERVICE_ADDRESS + "?offset=0&limit=100"), SERVICE_ADDRESS), Endpoint.LIST);
+        Assert.assertEquals(Endpoint.of(new HttpGet(SERVICE_ADDRESS + "/?q=john"), SERVICE_ADDRESS), Endpoint.LIST);
+        Assert.assertEquals(Endpoint.of(new HttpGet(SERVICE_ADDRESS + "/5a1b"), SERVICE_ADDRESS), Endpoint.DETAIL);
+        Assert.assertEquals(Endpoint.of(new HttpPost(SERVICE_ADDRESS), SERVICE_ADDRESS), Endpoint.CREATE);
+        Assert.assertEquals(Endpoint.of(new HttpPatch(SERVICE_ADDRESS + "/5a1b"), SERVICE_ADDRESS), Endpoint.UPDATE);
+        Assert.assertEquals(Endpoint.of(new HttpPut(SERVICE_ADDRESS + "/5a1b/activation"), SERVICE_ADDRESS), Endpoint.ACTIVATION);
+        Assert.assertEquals(Endpoint.of(new HttpDelete(SERVICE_ADDRESS + "/5a1b/activation"), SERVICE_ADDRESS), Endpoint.ACTIVATION);
+    }
+
+    @Test
+    public void testOfOtherAddress() {
+        // service address written differently, only the path is used
+        Assert.assertEquals(Endpoint.of(new HttpGet("https://api.smartrecruiters.com:443/users/5a1b/activation"), SERVICE_ADDRESS),
+                Endpoint.ACTIVATION);
+    }
+
+    @Test
+    public void testIsIdempotent() {
+        Assert.assertTrue(Endpoint.isIdempotent(new HttpGet(SERVICE_ADDRESS), Endpoint.LIST));
+        Assert.assertTrue(Endpoint.isIdempotent(new HttpPatch(SERVICE_ADDRESS + "/5a1b"), Endpoint.UPDATE));
+        Assert.assertTrue(Endpoint.isIdempotent(new HttpPut(SERVICE_ADDRESS + "/5a1b/activation"), Endpoint.ACTIVATION));
+        Assert.assertTrue(Endpoint.isIdempotent(new HttpDelete(SERVICE_ADDRESS + "/5a1b/activation"), Endpoint.ACTIVATION));
+        // repeated create could create the user twice
+        Assert.assertFalse(Endpoint.isIdempotent(new HttpPost(SERVICE_ADDRESS), Endpoint.CREATE));
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author gpalos
+ */
+public class ExecutorFactoryTest {
+
+    /**
+     * Task blocked until released, counts tasks running at the same time.
+     */
+    private static class BlockingTask implements Callable<Integer> {
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        BlockingTask(AtomicInteger running, AtomicInteger maxRunning, CountDownLatch started, CountDownLatch release) {
+            this.running = running;
+            this.maxRunning = maxRunning;
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public Integer call() throws InterruptedException {
+            int now = running.incrementAndGet();
+            synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), now));
+            }
+            started.countDown();
+            try {
+                release.await();
+                return now;
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Holds the permit until released, also when interrupted by shutdownNow.
+     */
+    private Runnable holdPermit(final CountDownLatch started, final CountDownLatch release) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                while (true) {
+                    try {
+                        release.await();
+                        return;
+                    } catch (InterruptedException e) {
+                        // keep waiting
+                    }
+                }
+            }
+        };
+    }
+
+    @Test
+    public void testThreadPoolThreadsAreNamedDaemons() throws Exception {
+        ExecutorService executor = ExecutorFactory.newExecutor("test-pool-", 2, false);
+        try {
+            Thread thread = executor.submit(new Callable<Thread>() {
+                @Override
+                public Thread call() {
+                    return Thread.currentThread();
+                }
+            }).get();
+            Assert.assertTrue(thread.getName().startsWith("test-pool-"), thread.getName());
+            Assert.assertTrue(thread.isDaemon());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsFallBackToPool() throws Exception {
+        ExecutorService executor = ExecutorFactory.newExecutor("test-virtual-", 2, true);
+        try {
+            Assert.assertEquals(executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return "done";
+                }
+            }).get(), "done");
+            if (!ExecutorFactory.isVirtualThreadsAvailable()) {
+                Assert.assertFalse(executor instanceof ExecutorFactory.BoundedExecutor);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBoundedExecutorLimitsConcurrency() throws Exception {
+        ExecutorService executor = new ExecutorFactory.BoundedExecutor(Executors.newCachedThreadPool(), 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(executor.submit(new BlockingTask(running, maxRunning, started, release)));
+            }
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            Assert.assertEquals(running.get(), 2);
+
+            release.countDown();
+            for (Future<Integer> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            Assert.assertEquals(maxRunning.get(), 2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWaitingTaskIsCancelledOnShutdown() throws Exception {
+        ExecutorService executor = new ExecutorFactory.BoundedExecutor(Executors.newCachedThreadPool(), 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(holdPermit(started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<Integer> waiting = executor.submit(new BlockingTask(new AtomicInteger(), new AtomicInteger(),
+                new CountDownLatch(1), new CountDownLatch(0)));
+        Thread.sleep(50);
+
+        executor.shutdownNow();
+        try {
+            // without cancel the caller would wait forever
+            waiting.get(5, TimeUnit.SECONDS);
+            Assert.fail("task waiting for a permit was completed");
+        } catch (CancellationException e) {
+            Assert.assertTrue(waiting.isCancelled());
+        }
+        release.countDown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWaitingRunnableRunsInterruptedOnShutdown() throws Exception {
+        ExecutorService executor = new ExecutorFactory.BoundedExecutor(Executors.newCachedThreadPool(), 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(holdPermit(started, release));
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                interrupted.set(Thread.currentThread().isInterrupted());
+                ran.countDown();
+            }
+        });
+        Thread.sleep(50);
+
+        executor.shutdownNow();
+        Assert.assertTrue(ran.await(5, TimeUnit.SECONDS), "runnable was dropped");
+        Assert.assertTrue(interrupted.get());
+        release.countDown();
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.identityconnectors.common.security.GuardedString;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * @author gpalos
+ */
+public class Http2TransportTest {
+
+    private StandInServer server;
+    private Http2Transport transport;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        if (!Http2Transport.isAvailable()) {
+            throw new SkipException("java.net.http is not available");
+        }
+        server = new StandInServer(10);
+        server.start();
+    }
+
+    @AfterMethod
+    public void stopServer() {
+        if (transport != null) {
+            transport.release();
+            transport = null;
+        }
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+    }
+
+    private <T extends SmartRecruitersConfiguration> T configuration(T configuration) {
+        configuration.setServiceAddress(server.getServiceAddress());
+        configuration.setAuthMethod("TOKEN");
+        configuration.setTokenName("X-SmartToken");
+        configuration.setTokenValue(new GuardedString("stand-in".toCharArray()));
+        configuration.setTransport(SmartRecruitersConfiguration.TRANSPORT_HTTP2);
+        return configuration;
+    }
+
+    private int get(String uri) throws IOException {
+        CloseableHttpResponse response = transport.send(new HttpGet(uri));
+        try {
+            EntityUtils.consume(response.getEntity());
+            return response.getStatusLine().getStatusCode();
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void testSend() throws Exception {
+        transport = Http2Transport.acquire(configuration(new SmartRecruitersConfiguration()));
+
+        Assert.assertEquals(get(server.getServiceAddress() + "/me"), 200);
+    }
+
+    @Test
+    public void testProxy() throws Exception {
+        URI serviceAddress = URI.create(server.getServiceAddress());
+        SmartRecruitersConfiguration configuration = configuration(new SmartRecruitersConfiguration());
+        // host is not resolvable, requests go only over the proxy
+        configuration.setServiceAddress("http://smartrecruiters.invalid" + serviceAddress.getPath());
+        configuration.setProxy(serviceAddress.getHost());
+        configuration.setProxyPort(serviceAddress.getPort());
+        transport = Http2Transport.acquire(configuration);
+
+        Assert.assertEquals(get(configuration.getServiceAddress() + "/me"), 200);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testRequestTimeout() throws Exception {
+        SharedConnectionPoolTest.TimeoutConfiguration configuration = configuration(new SharedConnectionPoolTest.TimeoutConfiguration());
+        configuration.setSocketTimeout(100);
+        transport = Http2Transport.acquire(configuration);
+        server.setLatencyMillis(1000);
+
+        get(server.getServiceAddress() + "/me");
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.common.logging.Log;
+import org.json.JSONObject;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author gpalos
+ */
+public class MessageLogTest {
+
+    /**
+     * Counts how many times the message argument was formatted.
+     */
+    private static class Counted {
+        private final AtomicInteger formatted = new AtomicInteger();
+
+        @Override
+        public String toString() {
+            formatted.incrementAndGet();
+            return "counted";
+        }
+    }
+
+    private MessageLog messageLog(int maxBodySize, String... redactedFields) {
+        return new MessageLog(Log.getLog(MessageLogTest.class), maxBodySize, 1, redactedFields);
+    }
+
+    @Test
+    public void testRedactedFields() {
+        MessageLog messageLog = messageLog(0, SmartRecruitersConnector.ATTR_PASSWORD, "token");
+        JSONObject body = new JSONObject()
+                .put(SmartRecruitersConnector.ATTR_FIRST_NAME, "John")
+                .put(SmartRecruitersConnector.ATTR_PASSWORD, "se\"cr,et}")
+                .put("nested", new JSONObject().put("token", 12345));
+
+        String formatted = messageLog.format(body);
+        Assert.assertFalse(formatted.contains("cr,et"), formatted);
+        Assert.assertFalse(formatted.contains("12345"), formatted);
+        Assert.assertTrue(formatted.contains("\"password\":\"***\""), formatted);
+        Assert.assertTrue(formatted.contains("\"token\":\"***\""), formatted);
+        Assert.assertTrue(formatted.contains("\"firstName\":\"John\""), formatted);
+        // still valid JSON
+        Assert.assertEquals(new JSONObject(formatted).getString(SmartRecruitersConnector.ATTR_FIRST_NAME), "John");
+    }
+
+    @Test
+    public void testRedactedPatchValue() {
+        MessageLog messageLog = messageLog(0, "value");
+
+        Assert.assertEquals(messageLog.format("[{\"op\": \"add\", \"path\": \"/password\", \"value\": \"secret\"}]"),
+                "[{\"op\": \"add\", \"path\": \"/password\", \"value\": \"***\"}]");
+    }
+
+    @Test
+    public void testNothingToRedact() {
+        Assert.assertEquals(messageLog(0).format("{\"password\":\"secret\"}"), "{\"password\":\"secret\"}");
+        Assert.assertEquals(messageLog(0, " ", null).format("{\"password\":\"secret\"}"), "{\"password\":\"secret\"}");
+        Assert.assertNull(messageLog(0).format(null));
+    }
+
+    @Test
+    public void testLongBodyIsShortened() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            body.append("0123456789");
+        }
+
+        Assert.assertEquals(messageLog(10).format(body), "0123456789... (1000 characters)");
+        Assert.assertEquals(messageLog(0).format(body).length(), 1000);
+        Assert.assertEquals(messageLog(2000).format(body).length(), 1000);
+    }
+
+    @Test
+    public void testBodyIsFormattedOnlyWhenLogged() {
+        MessageLog messageLog = messageLog(0);
+        Counted body = new Counted();
+
+        messageLog.body("body: {0}", body);
+        // level depends on the log configuration of the test run
+        Assert.assertEquals(body.formatted.get(), messageLog.isOk() ? 1 : 0);
+    }
+
+    @Test
+    public void testUserMessagesAreSampled() {
+        MessageLog messageLog = new MessageLog(Log.getLog(MessageLogTest.class), 0, 10, null);
+        Counted user = new Counted();
+        for (int i = 0; i < 100; i++) {
+            messageLog.user("user: {0}", user);
+        }
+        Assert.assertEquals(user.formatted.get(), messageLog.isOk() ? 10 : 0);
+
+        messageLog = new MessageLog(Log.getLog(MessageLogTest.class), 0, 0, null);
+        Counted none = new Counted();
+        messageLog.user("user: {0}", none);
+        Assert.assertEquals(none.formatted.get(), 0);
+    }
+}
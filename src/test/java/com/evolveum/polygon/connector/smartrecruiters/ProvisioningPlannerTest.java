@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import com.evolveum.polygon.connector.smartrecruiters.ProvisioningPlanner.Activation;
+import org.json.JSONObject;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author gpalos
+ */
+public class ProvisioningPlannerTest {
+
+    private JSONObject user(Boolean active) {
+        JSONObject user = new JSONObject().put(SmartRecruitersConnector.ATTR_ID, "5a1b");
+        if (active != null) {
+            user.put(SmartRecruitersConnector.ATTR_ACTIVE, active);
+        }
+        return user;
+    }
+
+    @Test
+    public void testCreate() {
+        Assert.assertEquals(ProvisioningPlanner.planCreate(true, user(false)), Activation.ACTIVATE);
+        Assert.assertEquals(ProvisioningPlanner.planCreate(true, user(true)), Activation.NONE);
+        Assert.assertEquals(ProvisioningPlanner.planCreate(false, user(true)), Activation.DEACTIVATE);
+        Assert.assertEquals(ProvisioningPlanner.planCreate(false, user(false)), Activation.NONE);
+    }
+
+    @Test
+    public void testCreateWithoutEnableIsDisabled() {
+        Assert.assertEquals(ProvisioningPlanner.planCreate(null, user(true)), Activation.DEACTIVATE);
+        Assert.assertEquals(ProvisioningPlanner.planCreate(null, user(false)), Activation.NONE);
+    }
+
+    @Test
+    public void testCreateWithUnknownState() {
+        // state is not in the response, request is sent to be sure
+        Assert.assertEquals(ProvisioningPlanner.planCreate(true, user(null)), Activation.ACTIVATE);
+        Assert.assertEquals(ProvisioningPlanner.planCreate(false, user(null)), Activation.DEACTIVATE);
+        Assert.assertEquals(ProvisioningPlanner.planCreate(true, user(null).put(SmartRecruitersConnector.ATTR_ACTIVE, JSONObject.NULL)),
+                Activation.ACTIVATE);
+    }
+
+    @Test
+    public void testUpdate() {
+        Assert.assertEquals(ProvisioningPlanner.planUpdate(true, user(false)), Activation.ACTIVATE);
+        Assert.assertEquals(ProvisioningPlanner.planUpdate(true, user(true)), Activation.NONE);
+        Assert.assertEquals(ProvisioningPlanner.planUpdate(false, user(true)), Activation.DEACTIVATE);
+        Assert.assertEquals(ProvisioningPlanner.planUpdate(false, user(false)), Activation.NONE);
+    }
+
+    @Test
+    public void testUpdateWithoutEnable() {
+        Assert.assertEquals(ProvisioningPlanner.planUpdate(null, user(true)), Activation.NONE);
+        Assert.assertEquals(ProvisioningPlanner.planUpdate(null, null), Activation.NONE);
+    }
+
+    @Test
+    public void testUpdateWithoutPatch() {
+        // nothing was patched, current state is not known
+        Assert.assertEquals(ProvisioningPlanner.planUpdate(true, null), Activation.ACTIVATE);
+        Assert.assertEquals(ProvisioningPlanner.planUpdate(false, null), Activation.DEACTIVATE);
+    }
+}
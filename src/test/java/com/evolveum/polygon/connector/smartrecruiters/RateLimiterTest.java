@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gpalos
+ */
+public class RateLimiterTest {
+
+    private HttpResponse response(int statusCode, String... headers) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, null);
+        for (int i = 0; i < headers.length; i += 2) {
+            response.addHeader(headers[i], headers[i + 1]);
+        }
+        return response;
+    }
+
+    private long acquireMillis(RateLimiter limiter, int count) throws InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            limiter.acquire();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Test
+    public void testRetryAfterSeconds() {
+        RateLimiter limiter = new RateLimiter(0);
+
+        Assert.assertEquals(limiter.throttled(response(429, "Retry-After", "2")), 2000);
+        Assert.assertEquals(limiter.getThrottled(), 1);
+    }
+
+    @Test
+    public void testRetryAfterDate() {
+        RateLimiter limiter = new RateLimiter(0);
+        String date = DateUtils.formatDate(new Date(System.currentTimeMillis() + 5000));
+
+        long wait = limiter.throttled(response(429, "Retry-After", date));
+        // HTTP date has only seconds
+        Assert.assertTrue(wait > 3000 && wait <= 5000, "wait: " + wait);
+    }
+
+    @Test
+    public void testThrottledWithoutRetryAfter() {
+        RateLimiter limiter = new RateLimiter(0);
+
+        Assert.assertEquals(limiter.throttled(response(429)), 1000);
+        Assert.assertEquals(limiter.throttled(response(429, "Retry-After", "soon")), 1000);
+    }
+
+    @Test
+    public void testThrottledWithRateLimitReset() {
+        RateLimiter limiter = new RateLimiter(0);
+        Assert.assertEquals(limiter.throttled(response(429, "X-RateLimit-Reset", "3")), 3000);
+
+        long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 5;
+        long wait = limiter.throttled(response(429, "X-RateLimit-Reset", String.valueOf(reset)));
+        // epoch seconds
+        Assert.assertTrue(wait > 3000 && wait <= 5000, "wait: " + wait);
+    }
+
+    @Test
+    public void testThrottledPausesRequests() throws Exception {
+        RateLimiter limiter = new RateLimiter(0);
+        limiter.throttled(response(429, "Retry-After", "1"));
+
+        long waited = acquireMillis(limiter, 1);
+        Assert.assertTrue(waited >= 900, "waited: " + waited);
+        Assert.assertTrue(limiter.getWaitMillis() >= 900);
+        // pause is over
+        Assert.assertTrue(acquireMillis(limiter, 1) < 100);
+    }
+
+    @Test
+    public void testExhaustedRateLimitPausesRequests() throws Exception {
+        RateLimiter limiter = new RateLimiter(0);
+        limiter.update(response(200, "X-RateLimit-Remaining", "5", "X-RateLimit-Reset", "1"));
+        Assert.assertTrue(acquireMillis(limiter, 1) < 100);
+
+        limiter.update(response(200, "X-RateLimit-Remaining", "0", "X-RateLimit-Reset", "1"));
+        long waited = acquireMillis(limiter, 1);
+        Assert.assertTrue(waited >= 900, "waited: " + waited);
+        Assert.assertEquals(limiter.getThrottled(), 0);
+    }
+
+    @Test
+    public void testInvalidRateLimitHeadersAreIgnored() throws Exception {
+        RateLimiter limiter = new RateLimiter(0);
+        limiter.update(response(200, "X-RateLimit-Remaining", "none", "X-RateLimit-Reset", "1"));
+        limiter.update(response(200, "X-RateLimit-Remaining", "0", "X-RateLimit-Reset", "later"));
+        limiter.update(response(200, "X-RateLimit-Reset", "1"));
+
+        Assert.assertTrue(acquireMillis(limiter, 1) < 100);
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        RateLimiter limiter = new RateLimiter(0);
+
+        Assert.assertTrue(acquireMillis(limiter, 10000) < 500);
+        Assert.assertEquals(limiter.getWaitMillis(), 0);
+    }
+
+    @Test
+    public void testBurstThenRate() throws Exception {
+        RateLimiter limiter = new RateLimiter(50);
+
+        // burst of one second is allowed
+        Assert.assertTrue(acquireMillis(limiter, 50) < 100);
+        // next 10 requests at 50 per second
+        long waited = acquireMillis(limiter, 10);
+        Assert.assertTrue(waited >= 150, "waited: " + waited);
+        Assert.assertTrue(limiter.getWaitMillis() > 0);
+    }
+
+    @Test
+    public void testSharedInstanceChangesRate() throws Exception {
+        String serviceAddress = "http://rate-limiter-test/" + System.nanoTime();
+        RateLimiter limiter = RateLimiter.getInstance(serviceAddress, 1000);
+
+        Assert.assertSame(RateLimiter.getInstance(serviceAddress, 10), limiter);
+        // burst is cut to the new rate
+        long waited = acquireMillis(limiter, 12);
+        Assert.assertTrue(waited >= 100, "waited: " + waited);
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author gpalos
+ */
+public class RequestMetricsTest {
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void testResponsesPerEndpointAndMethod() {
+        RequestMetrics metrics = new RequestMetrics(0);
+        metrics.response(Endpoint.DETAIL, "GET", millis(20), 200, 0);
+        metrics.response(Endpoint.DETAIL, "GET", millis(40), 404, 0);
+        metrics.response(Endpoint.UPDATE, "PATCH", millis(5), 200, 120);
+        metrics.failure(Endpoint.DETAIL, "GET", millis(3), 0);
+
+        Map<String, Long> snapshot = metrics.getSnapshot();
+        Assert.assertEquals(snapshot.get("detail.GET.requests").longValue(), 3);
+        Assert.assertEquals(snapshot.get("detail.GET.failures").longValue(), 1);
+        Assert.assertEquals(snapshot.get("detail.GET.status.200").longValue(), 1);
+        Assert.assertEquals(snapshot.get("detail.GET.status.404").longValue(), 1);
+        Assert.assertEquals(snapshot.get("detail.GET.latencyTotalMs").longValue(), 63);
+        Assert.assertEquals(snapshot.get("detail.GET.latencyMaxMs").longValue(), 40);
+        Assert.assertEquals(snapshot.get("update.PATCH.requests").longValue(), 1);
+        Assert.assertEquals(snapshot.get("update.PATCH.bytesOut").longValue(), 120);
+        Assert.assertNull(snapshot.get("list.GET.requests"));
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        RequestMetrics metrics = new RequestMetrics(0);
+        metrics.response(Endpoint.LIST, "GET", millis(10), 200, 0);
+        metrics.response(Endpoint.LIST, "GET", millis(11), 200, 0);
+        metrics.response(Endpoint.LIST, "GET", millis(60000), 200, 0);
+
+        Map<String, Long> snapshot = metrics.getSnapshot();
+        // bucket bounds are inclusive
+        Assert.assertEquals(snapshot.get("list.GET.latency.le10ms").longValue(), 1);
+        Assert.assertEquals(snapshot.get("list.GET.latency.le25ms").longValue(), 1);
+        Assert.assertEquals(snapshot.get("list.GET.latency.over10000ms").longValue(), 1);
+    }
+
+    @Test
+    public void testPercentileInSummary() {
+        RequestMetrics metrics = new RequestMetrics(0);
+        for (int i = 0; i < 95; i++) {
+            metrics.response(Endpoint.LIST, "GET", millis(30), 200, 0);
+        }
+        for (int i = 0; i < 5; i++) {
+            metrics.response(Endpoint.LIST, "GET", millis(3000), 200, 0);
+        }
+        Assert.assertTrue(metrics.getSummary().contains("p95Ms<=50"), metrics.getSummary());
+
+        metrics.response(Endpoint.LIST, "GET", millis(3000), 200, 0);
+        Assert.assertTrue(metrics.getSummary().contains("p95Ms<=5000"), metrics.getSummary());
+    }
+
+    @Test
+    public void testBytesIn() throws Exception {
+        RequestMetrics metrics = new RequestMetrics(0);
+        HttpEntity entity = new ByteArrayEntity(new byte[1000]);
+        entity = metrics.countBytesIn(Endpoint.LIST, "GET", entity);
+        entity = metrics.countBytesInUncompressed(Endpoint.LIST, "GET", entity);
+
+        Assert.assertEquals(EntityUtils.toByteArray(entity).length, 1000);
+        Map<String, Long> snapshot = metrics.getSnapshot();
+        Assert.assertEquals(snapshot.get("list.GET.bytesIn").longValue(), 1000);
+        Assert.assertEquals(snapshot.get("list.GET.bytesInUncompressed").longValue(), 1000);
+        Assert.assertNull(metrics.countBytesIn(Endpoint.LIST, "GET", null));
+    }
+
+    @Test
+    public void testListingTimes() {
+        RequestMetrics metrics = new RequestMetrics(0);
+        metrics.pageRead(millis(100));
+        metrics.pageRead(millis(50));
+        metrics.pageHandled(millis(400));
+
+        Map<String, Long> snapshot = metrics.getSnapshot();
+        Assert.assertEquals(snapshot.get("listing.networkMs").longValue(), 150);
+        Assert.assertEquals(snapshot.get("listing.handlerMs").longValue(), 400);
+    }
+
+    @Test
+    public void testSharedPerServiceAddress() {
+        String serviceAddress = "http://request-metrics-test/" + System.nanoTime();
+        RequestMetrics metrics = RequestMetrics.getInstance(serviceAddress, 0);
+        metrics.response(Endpoint.ME, "GET", millis(1), 200, 0);
+
+        Assert.assertSame(RequestMetrics.getInstance(serviceAddress, 1000), metrics);
+        Assert.assertNull(RequestMetrics.getInstance(serviceAddress + "/other", 0).getSnapshot().get("me.GET.requests"));
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+/**
+ * @author gpalos
+ */
+public class RetryPolicyTest {
+
+    private SmartRecruitersConfiguration configuration(int maxRetries, int baseDelay, int maxDelay) {
+        SmartRecruitersConfiguration configuration = new SmartRecruitersConfiguration();
+        configuration.setServiceAddress("http://retry-policy-test/" + System.nanoTime());
+        configuration.setMaxRetries(maxRetries);
+        configuration.setRetryBaseDelay(baseDelay);
+        configuration.setRetryMaxDelay(maxDelay);
+        return configuration;
+    }
+
+    @Test
+    public void testCanRetryUpToMaxRetries() {
+        RetryPolicy policy = new RetryPolicy(configuration(2, 0, 0));
+
+        Assert.assertTrue(policy.canRetry(1));
+        Assert.assertTrue(policy.canRetry(2));
+        Assert.assertFalse(policy.canRetry(3));
+        Assert.assertEquals(policy.getExhausted(), 1);
+    }
+
+    @Test
+    public void testNoRetries() {
+        RetryPolicy policy = new RetryPolicy(configuration(0, 0, 0));
+
+        Assert.assertFalse(policy.canRetry(1));
+    }
+
+    @Test
+    public void testBackoffIsCappedByMaxDelay() throws Exception {
+        RetryPolicy policy = new RetryPolicy(configuration(100, 10, 30));
+
+        long start = System.currentTimeMillis();
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            policy.backoff(attempt);
+        }
+        // without the cap attempt 10 alone could wait 5 s
+        long waited = System.currentTimeMillis() - start;
+        Assert.assertTrue(waited <= 10 * 30 + 200, "waited: " + waited);
+        Assert.assertEquals(policy.getRetries(), 10);
+    }
+
+    @Test
+    public void testBackoffDoesNotOverflow() throws Exception {
+        RetryPolicy policy = new RetryPolicy(configuration(100, 1000, 20));
+
+        long start = System.currentTimeMillis();
+        policy.backoff(64);
+        Assert.assertTrue(System.currentTimeMillis() - start <= 200);
+    }
+
+    @Test
+    public void testCircuitBreakerPerEndpoint() {
+        SmartRecruitersConfiguration configuration = configuration(0, 0, 0);
+        RetryPolicy policy = new RetryPolicy(configuration);
+
+        for (Endpoint endpoint : Endpoint.values()) {
+            Assert.assertNotNull(policy.getCircuitBreaker(endpoint));
+        }
+        Assert.assertNotSame(policy.getCircuitBreaker(Endpoint.LIST), policy.getCircuitBreaker(Endpoint.DETAIL));
+        // instances of the same service address share the breakers
+        Assert.assertSame(new RetryPolicy(configuration).getCircuitBreaker(Endpoint.LIST), policy.getCircuitBreaker(Endpoint.LIST));
+    }
+
+    @Test
+    public void testStatistics() {
+        RetryPolicy policy = new RetryPolicy(configuration(0, 0, 0));
+        policy.canRetry(1);
+
+        Map<String, Object> statistics = policy.getStatistics();
+        Assert.assertEquals(statistics.get("retriesExhausted"), 1L);
+        Assert.assertEquals(statistics.get("circuitBreaker.detail.state"), CircuitBreaker.State.CLOSED.name());
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.identityconnectors.common.security.GuardedString;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author gpalos
+ */
+public class SharedConnectionPoolTest {
+
+    private StandInServer server;
+    private SharedConnectionPool pool;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        server = new StandInServer(10);
+        server.start();
+    }
+
+    @AfterMethod
+    public void stopServer() {
+        if (pool != null) {
+            pool.release();
+            pool = null;
+        }
+        server.stop();
+    }
+
+    /**
+     * Configuration of connector-rest version with timeouts.
+     */
+    public static class TimeoutConfiguration extends SmartRecruitersConfiguration {
+        private Integer socketTimeout;
+
+        public Integer getSocketTimeout() {
+            return socketTimeout;
+        }
+
+        public void setSocketTimeout(Integer socketTimeout) {
+            this.socketTimeout = socketTimeout;
+        }
+    }
+
+    private <T extends SmartRecruitersConfiguration> T configuration(T configuration) {
+        configuration.setServiceAddress(server.getServiceAddress());
+        configuration.setAuthMethod("TOKEN");
+        configuration.setTokenName("X-SmartToken");
+        configuration.setTokenValue(new GuardedString("stand-in".toCharArray()));
+        configuration.setSharedConnectionPool(true);
+        return configuration;
+    }
+
+    private int get(String uri) throws IOException {
+        CloseableHttpResponse response = pool.send(new HttpGet(uri));
+        try {
+            EntityUtils.consume(response.getEntity());
+            return response.getStatusLine().getStatusCode();
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void testLeaseWaitIsMeasured() throws Exception {
+        SmartRecruitersConfiguration configuration = configuration(new SmartRecruitersConfiguration());
+        configuration.setMaxConnectionsTotal(1);
+        configuration.setMaxConnectionsPerRoute(1);
+        pool = SharedConnectionPool.acquire(configuration);
+        server.setLatencyMillis(100);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        return get(server.getServiceAddress() + "/me");
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                Assert.assertEquals(result.get().intValue(), 200);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // one connection, two requests waited for it
+        Assert.assertEquals(pool.getStatistics().get("waitingRequests").longValue(), 2);
+        Assert.assertTrue(pool.getStatistics().get("leaseWaitMillis") >= 150, "statistics: " + pool.getStatistics());
+        Assert.assertTrue(pool.getStatistics().get("maxLeaseWaitMillis") >= 100, "statistics: " + pool.getStatistics());
+    }
+
+    @Test
+    public void testFreeConnectionIsNotWaiting() throws Exception {
+        pool = SharedConnectionPool.acquire(configuration(new SmartRecruitersConfiguration()));
+        // first lease loads the classes
+        get(server.getServiceAddress() + "/me");
+        long waiting = pool.getStatistics().get("waitingRequests");
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(get(server.getServiceAddress() + "/me"), 200);
+        }
+
+        Assert.assertEquals(pool.getStatistics().get("requests").longValue(), 6);
+        Assert.assertEquals(pool.getStatistics().get("waitingRequests").longValue(), waiting);
+    }
+
+    @Test
+    public void testProxy() throws Exception {
+        URI serviceAddress = URI.create(server.getServiceAddress());
+        SmartRecruitersConfiguration configuration = configuration(new SmartRecruitersConfiguration());
+        // host is not resolvable, requests go only over the proxy
+        configuration.setServiceAddress("http://smartrecruiters.invalid" + serviceAddress.getPath());
+        configuration.setProxy(serviceAddress.getHost());
+        configuration.setProxyPort(serviceAddress.getPort());
+        pool = SharedConnectionPool.acquire(configuration);
+
+        Assert.assertEquals(get(configuration.getServiceAddress() + "/me"), 200);
+    }
+
+    @Test(expectedExceptions = SocketTimeoutException.class)
+    public void testSocketTimeout() throws Exception {
+        TimeoutConfiguration configuration = configuration(new TimeoutConfiguration());
+        configuration.setSocketTimeout(100);
+        pool = SharedConnectionPool.acquire(configuration);
+        server.setLatencyMillis(1000);
+
+        get(server.getServiceAddress() + "/me");
+    }
+
+    @Test
+    public void testKeyContainsProxyAndTimeouts() {
+        TimeoutConfiguration configuration = configuration(new TimeoutConfiguration());
+        String key = SharedConnectionPool.createKey(configuration);
+
+        configuration.setSocketTimeout(100);
+        String withTimeout = SharedConnectionPool.createKey(configuration);
+        Assert.assertNotEquals(withTimeout, key);
+
+        configuration.setProxy("proxy.example.com");
+        configuration.setProxyPort(3128);
+        Assert.assertNotEquals(SharedConnectionPool.createKey(configuration), withTimeout);
+        Assert.assertTrue(SharedConnectionPool.createKey(configuration).contains("proxy.example.com:3128"));
+    }
+
+    @Test
+    public void testKeyContainsPoolSizing() {
+        SmartRecruitersConfiguration configuration = configuration(new SmartRecruitersConfiguration());
+        String key = SharedConnectionPool.createKey(configuration);
+
+        configuration.setMaxConnectionsPerRoute(configuration.getMaxConnectionsPerRoute() + 1);
+        String perRoute = SharedConnectionPool.createKey(configuration);
+        Assert.assertNotEquals(perRoute, key);
+
+        configuration.setMaxConnectionsTotal(configuration.getMaxConnectionsTotal() + 1);
+        String total = SharedConnectionPool.createKey(configuration);
+        Assert.assertNotEquals(total, perRoute);
+
+        configuration.setConnectionTimeToLive(configuration.getConnectionTimeToLive() + 1);
+        String timeToLive = SharedConnectionPool.createKey(configuration);
+        Assert.assertNotEquals(timeToLive, total);
+
+        configuration.setIdleConnectionTimeout(configuration.getIdleConnectionTimeout() + 1);
+        Assert.assertNotEquals(SharedConnectionPool.createKey(configuration), timeToLive);
+    }
+
+    @Test
+    public void testOtherSizingGetsOwnPool() {
+        SmartRecruitersConfiguration configuration = configuration(new SmartRecruitersConfiguration());
+        pool = SharedConnectionPool.acquire(configuration);
+        SharedConnectionPool same = SharedConnectionPool.acquire(configuration);
+        Assert.assertSame(same, pool);
+        same.release();
+
+        configuration.setMaxConnectionsPerRoute(configuration.getMaxConnectionsPerRoute() + 10);
+        SharedConnectionPool other = SharedConnectionPool.acquire(configuration);
+        try {
+            Assert.assertNotSame(other, pool);
+        } finally {
+            other.release();
+        }
+    }
+
+    @Test
+    public void testMissingPropertiesAreIgnored() {
+        SmartRecruitersConfiguration configuration = configuration(new SmartRecruitersConfiguration());
+
+        Assert.assertNull(SharedConnectionPool.getTimeout(configuration, SharedConnectionPool.PROPERTY_SOCKET_TIMEOUT));
+        Assert.assertNull(SharedConnectionPool.createProxy(configuration));
+        Assert.assertEquals(SharedConnectionPool.createRequestConfig(configuration).getSocketTimeout(), -1);
+    }
+}
@@ -0,0 +1,645 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptions;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.ResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncDelta;
+import org.identityconnectors.framework.common.objects.SyncResultsHandler;
+import org.identityconnectors.framework.common.objects.SyncToken;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Search strategies and synchronization of the connector against a small stand-in server, every test has its own server.
+ *
+ * @author gpalos
+ */
+public class SmartRecruitersConnectorTest {
+
+    private static final ObjectClass ACCOUNT = new ObjectClass(ObjectClass.ACCOUNT_NAME);
+
+    private static final int USERS = 110;
+    private static final int PAGE_SIZE = 20;
+
+    private StandInServer server;
+    private SmartRecruitersConnector connector;
+    private File checkpoints;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        server = new StandInServer(USERS);
+        server.start();
+    }
+
+    @AfterMethod
+    public void stopServer() {
+        if (connector != null) {
+            connector.dispose();
+            connector = null;
+        }
+        server.stop();
+        if (checkpoints != null) {
+            for (File file : checkpoints.listFiles()) {
+                file.delete();
+            }
+            checkpoints.delete();
+            checkpoints = null;
+        }
+    }
+
+    private SmartRecruitersConfiguration configuration() {
+        SmartRecruitersConfiguration configuration = new SmartRecruitersConfiguration();
+        configuration.setServiceAddress(server.getServiceAddress());
+        configuration.setAuthMethod("TOKEN");
+        configuration.setTokenName("X-SmartToken");
+        configuration.setTokenValue(new GuardedString("stand-in".toCharArray()));
+        configuration.setPageSize(PAGE_SIZE);
+        configuration.setReadLocation(false);
+        configuration.setRetryBaseDelay(1);
+        configuration.setRetryMaxDelay(10);
+        return configuration;
+    }
+
+    private void init(SmartRecruitersConfiguration configuration) {
+        connector = new SmartRecruitersConnector();
+        connector.init(configuration);
+    }
+
+    /**
+     * @return uids in the order passed to the handler
+     */
+    private List<String> search(SmartRecruitersFilter query, final int limit) {
+        final List<String> uids = new ArrayList<String>();
+        connector.executeQuery(ACCOUNT, query, new ResultsHandler() {
+            @Override
+            public boolean handle(ConnectorObject connectorObject) {
+                uids.add(connectorObject.getUid().getUidValue());
+                return uids.size() < limit;
+            }
+        }, null);
+        return uids;
+    }
+
+    private List<String> findAll() {
+        return search(null, Integer.MAX_VALUE);
+    }
+
+    private List<String> allIds() {
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < USERS; i++) {
+            ids.add(UserPayloads.id(i));
+        }
+        return ids;
+    }
+
+    @Test
+    public void testParallelDetailsKeepPageOrder() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setReadLocation(true);
+        configuration.setDetailFetchThreads(4);
+        init(configuration);
+
+        Assert.assertEquals(findAll(), allIds());
+        // one list request per page (the last one is not full) and one detail request per user
+        Assert.assertEquals(server.getRequests("GET"), USERS / PAGE_SIZE + 1 + USERS);
+    }
+
+    @Test
+    public void testParallelDetailsUnordered() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setReadLocation(true);
+        configuration.setDetailFetchThreads(4);
+        configuration.setOrderedResults(false);
+        init(configuration);
+
+        List<String> uids = findAll();
+        Assert.assertEquals(uids.size(), USERS);
+        Assert.assertEquals(new HashSet<String>(uids), new HashSet<String>(allIds()));
+    }
+
+    @Test
+    public void testParallelDetailsStoppedByHandler() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setReadLocation(true);
+        configuration.setDetailFetchThreads(4);
+        init(configuration);
+
+        Assert.assertEquals(search(null, 5), allIds().subList(0, 5));
+        // details of the first page at most, next page is not listed
+        Assert.assertTrue(server.getRequests("GET") <= 1 + PAGE_SIZE, "requests: " + server.getRequests("GET"));
+    }
+
+    private SmartRecruitersFilter byUid(String uid) {
+        SmartRecruitersFilter query = new SmartRecruitersFilter();
+        query.byUid = uid;
+        return query;
+    }
+
+    /**
+     * Detail circuit breaker opened by one failure, next request is the half-open trial.
+     */
+    private void openDetailCircuit(SmartRecruitersConfiguration configuration) {
+        configuration.setCircuitBreakerThreshold(1);
+        configuration.setCircuitBreakerOpenTime(0);
+        configuration.setMaxRetries(0);
+        init(configuration);
+        server.setErrorEvery(1);
+        try {
+            search(byUid(UserPayloads.id(1)), Integer.MAX_VALUE);
+            Assert.fail("request did not fail");
+        } catch (ConnectorException e) {
+            // expected, circuit is open
+        }
+        server.setErrorEvery(0);
+    }
+
+    private void pauseRequests() {
+        BasicHttpResponse throttled = new BasicHttpResponse(HttpVersion.HTTP_1_1, 429, null);
+        throttled.addHeader("Retry-After", "1");
+        RateLimiter.getInstance(server.getServiceAddress(), 0).throttled(throttled);
+    }
+
+    @Test
+    public void testInterruptedTrialIsReleased() throws Exception {
+        openDetailCircuit(configuration());
+        pauseRequests();
+
+        Thread.currentThread().interrupt();
+        try {
+            search(byUid(UserPayloads.id(1)), Integer.MAX_VALUE);
+            Assert.fail("request was not interrupted");
+        } catch (ConnectorException e) {
+            // expected, interrupted while waiting for the rate limiter
+        } finally {
+            Thread.interrupted();
+        }
+
+        // next trial closes the circuit
+        Thread.sleep(1100);
+        Assert.assertEquals(search(byUid(UserPayloads.id(1)), Integer.MAX_VALUE), Collections.singletonList(UserPayloads.id(1)));
+    }
+
+    private SmartRecruitersConfiguration asyncDetails(int threads) {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setReadLocation(true);
+        configuration.setDetailFetchThreads(threads);
+        configuration.setTransport(SmartRecruitersConfiguration.TRANSPORT_ASYNC);
+        return configuration;
+    }
+
+    @Test
+    public void testCancelledAsyncTrialIsReleased() throws Exception {
+        SmartRecruitersConfiguration configuration = asyncDetails(4);
+        configuration.setOrderedResults(false);
+        openDetailCircuit(configuration);
+        server.setLatencyMillis(300);
+
+        try {
+            findAll();
+            Assert.fail("search did not fail");
+        } catch (ConnectorException e) {
+            // expected, details not allowed by the half-open circuit fail fast, the trial in flight is cancelled
+        }
+
+        Assert.assertEquals(search(byUid(UserPayloads.id(1)), Integer.MAX_VALUE), Collections.singletonList(UserPayloads.id(1)));
+    }
+
+    @Test
+    public void testAsyncDetailsRetryFailedRequests() {
+        server.setErrorEvery(5);
+        init(asyncDetails(4));
+
+        Assert.assertEquals(findAll(), allIds());
+        // every 503 is one retry, as with the blocking transport
+        Assert.assertTrue(server.getInjectedFailures() > 0);
+        Assert.assertEquals(connector.getRetryStatistics().get("retries"), server.getInjectedFailures());
+    }
+
+    @Test
+    public void testAsyncDetailsAreThrottled() {
+        server.setThrottleEvery(4, 0);
+        init(asyncDetails(4));
+
+        Assert.assertEquals(findAll(), allIds());
+        Assert.assertTrue(server.getInjectedFailures() > 0);
+        Assert.assertEquals(RateLimiter.getInstance(server.getServiceAddress(), 0).getThrottled(), server.getInjectedFailures());
+    }
+
+    @Test
+    public void testAsyncDetailsInFlightAreLimited() {
+        server.setLatencyMillis(20);
+        init(asyncDetails(2));
+
+        long start = System.nanoTime();
+        Assert.assertEquals(findAll(), allIds());
+        // at most two details are read at once
+        long millis = (System.nanoTime() - start) / 1000000;
+        Assert.assertTrue(millis >= USERS / 2 * 20, "millis: " + millis);
+    }
+
+    @Test
+    public void testDetailsAreNotReadWithoutLocation() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setReadLocation(true);
+        init(configuration);
+
+        final List<ConnectorObject> users = new ArrayList<ConnectorObject>();
+        connector.executeQuery(ACCOUNT, null, new ResultsHandler() {
+            @Override
+            public boolean handle(ConnectorObject connectorObject) {
+                users.add(connectorObject);
+                return true;
+            }
+        }, new OperationOptionsBuilder().setAttributesToGet(SmartRecruitersConnector.ATTR_FIRST_NAME).build());
+
+        Assert.assertEquals(users.size(), USERS);
+        Assert.assertNotNull(users.get(0).getAttributeByName(SmartRecruitersConnector.ATTR_FIRST_NAME));
+        Assert.assertNull(users.get(0).getAttributeByName(SmartRecruitersConnector.ATTR_LAST_NAME));
+        // only list pages
+        Assert.assertEquals(server.getRequests("GET"), USERS / PAGE_SIZE + 1);
+    }
+
+    @Test
+    public void testReadAheadKeepsPageOrder() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setPageReadAhead(2);
+        init(configuration);
+
+        Assert.assertEquals(findAll(), allIds());
+        Assert.assertEquals(server.getRequests("GET"), USERS / PAGE_SIZE + 1);
+    }
+
+    @Test
+    public void testReadAheadStoppedByHandler() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setPageReadAhead(2);
+        server.setLatencyMillis(20);
+        init(configuration);
+
+        Assert.assertEquals(search(null, 5), allIds().subList(0, 5));
+        // handled page, full queue and the page waiting for the queue
+        Assert.assertTrue(server.getRequests("GET") <= 2 + 2, "requests: " + server.getRequests("GET"));
+    }
+
+    @Test
+    public void testReadAheadRetriesFailedPage() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setPageReadAhead(2);
+        server.setErrorEvery(3);
+        init(configuration);
+
+        Assert.assertEquals(findAll(), allIds());
+        Assert.assertTrue(server.getInjectedFailures() > 0);
+    }
+
+    @Test(expectedExceptions = ConnectorException.class)
+    public void testReadAheadFailureIsThrownToReader() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setPageReadAhead(2);
+        configuration.setMaxRetries(0);
+        server.setErrorEvery(3);
+        init(configuration);
+
+        findAll();
+    }
+
+    @Test
+    public void testParallelPagesKeepPageOrder() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setPageFetchThreads(3);
+        init(configuration);
+
+        Assert.assertEquals(findAll(), allIds());
+        // pages computed from totalFound, last one is not full so nothing is read after it
+        Assert.assertEquals(server.getRequests("GET"), USERS / PAGE_SIZE + 1);
+    }
+
+    @Test
+    public void testParallelPagesUnordered() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setPageFetchThreads(3);
+        configuration.setOrderedResults(false);
+        init(configuration);
+
+        List<String> uids = findAll();
+        Assert.assertEquals(uids.size(), USERS);
+        Assert.assertEquals(new HashSet<String>(uids), new HashSet<String>(allIds()));
+    }
+
+    @Test
+    public void testParallelPagesExactlyFull() throws Exception {
+        server.stop();
+        server = new StandInServer(5 * PAGE_SIZE);
+        server.start();
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setPageFetchThreads(3);
+        init(configuration);
+
+        Assert.assertEquals(findAll().size(), 5 * PAGE_SIZE);
+        // last computed page is full, one more page is read sequentially to find the end
+        Assert.assertEquals(server.getRequests("GET"), 5 + 1);
+    }
+
+    @Test
+    public void testParallelPagesStoppedByHandler() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setPageFetchThreads(2);
+        init(configuration);
+
+        Assert.assertEquals(search(null, PAGE_SIZE + 5), allIds().subList(0, PAGE_SIZE + 5));
+        // first page and at most the pages in flight
+        Assert.assertTrue(server.getRequests("GET") <= 1 + 2 + 1, "requests: " + server.getRequests("GET"));
+    }
+
+    @Test(expectedExceptions = ConnectorException.class)
+    public void testParallelPagesFailure() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setPageFetchThreads(3);
+        configuration.setMaxRetries(0);
+        server.setErrorEvery(4);
+        init(configuration);
+
+        findAll();
+    }
+
+    @Test
+    public void testUpdateWithoutValueKeepsCurrentValue() {
+        init(configuration());
+        String uid = UserPayloads.id(1);
+        Set<Attribute> attributes = new HashSet<Attribute>();
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_FIRST_NAME, "Changed"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_EXTERNAL_DATA));
+
+        connector.update(ACCOUNT, new Uid(uid), attributes, null);
+
+        Assert.assertEquals(server.getUser(uid).getString(SmartRecruitersConnector.ATTR_FIRST_NAME), "Changed");
+        // empty value is not sent as remove
+        Assert.assertEquals(server.getUser(uid).getString(SmartRecruitersConnector.ATTR_EXTERNAL_DATA), "employee-1");
+    }
+
+    private Set<Attribute> attributes(Attribute... attributes) {
+        return new HashSet<Attribute>(Arrays.asList(attributes));
+    }
+
+    @Test
+    public void testDiffPatchSkipsUnchangedUser() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setDiffPatch(true);
+        init(configuration);
+        String uid = UserPayloads.id(1);
+
+        connector.update(ACCOUNT, new Uid(uid), attributes(
+                AttributeBuilder.build(SmartRecruitersConnector.ATTR_FIRST_NAME, "First1"),
+                AttributeBuilder.build(SmartRecruitersConnector.ATTR_EXTERNAL_DATA),
+                AttributeBuilder.buildEnabled(true)), null);
+
+        // user is compared with its detail, nothing is changed
+        Assert.assertEquals(server.getRequests("GET"), 1);
+        Assert.assertEquals(server.getRequests("PATCH"), 0);
+        Assert.assertEquals(server.getRequests("PUT"), 0);
+    }
+
+    @Test
+    public void testDiffPatchSendsChangedValues() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setDiffPatch(true);
+        init(configuration);
+        String uid = UserPayloads.id(1);
+
+        connector.update(ACCOUNT, new Uid(uid), attributes(
+                AttributeBuilder.build(SmartRecruitersConnector.ATTR_FIRST_NAME, "First1"),
+                AttributeBuilder.build(SmartRecruitersConnector.ATTR_LAST_NAME, "Changed"),
+                AttributeBuilder.build(SmartRecruitersConnector.ATTR_LOCATION_CITY, "Kosice"),
+                AttributeBuilder.buildEnabled(false)), null);
+
+        Assert.assertEquals(server.getRequests("PATCH"), 1);
+        Assert.assertEquals(server.getUser(uid).getString(SmartRecruitersConnector.ATTR_LAST_NAME), "Changed");
+        Assert.assertEquals(server.getUser(uid).getJSONObject(SmartRecruitersConnector.ATTR_LOCATION)
+                .getString(SmartRecruitersConnector.ATTR_LOCATION_CITY), "Kosice");
+        // state of the patched user is known, user 1 was active
+        Assert.assertEquals(server.getRequests("DELETE"), 1);
+        Assert.assertFalse(server.getUser(uid).getBoolean(SmartRecruitersConnector.ATTR_ACTIVE));
+    }
+
+    @Test
+    public void testDiffPatchAlwaysSendsPassword() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setDiffPatch(true);
+        init(configuration);
+
+        connector.update(ACCOUNT, new Uid(UserPayloads.id(1)), attributes(
+                AttributeBuilder.build(SmartRecruitersConnector.ATTR_FIRST_NAME, "First1"),
+                AttributeBuilder.buildPassword("secret".toCharArray())), null);
+
+        Assert.assertEquals(server.getRequests("PATCH"), 1);
+    }
+
+    @Test
+    public void testDiffPatchFromCache() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setReadLocation(true);
+        configuration.setDetailCacheSize(USERS);
+        configuration.setDiffPatch(true);
+        configuration.setDiffPatchFromCache(true);
+        init(configuration);
+        findAll();
+        long reads = server.getRequests("GET");
+
+        connector.update(ACCOUNT, new Uid(UserPayloads.id(1)), attributes(
+                AttributeBuilder.build(SmartRecruitersConnector.ATTR_FIRST_NAME, "First1")), null);
+
+        // compared with the cached detail
+        Assert.assertEquals(server.getRequests("GET"), reads);
+        Assert.assertEquals(server.getRequests("PATCH"), 0);
+    }
+
+    @Test
+    public void testDeleteRemovesCachedUser() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setReadLocation(true);
+        configuration.setDetailCacheSize(USERS);
+        configuration.setValidatorCacheSize(USERS);
+        init(configuration);
+        findAll();
+        Assert.assertEquals(connector.getDetailCacheStatistics().get("size").longValue(), USERS);
+        Assert.assertEquals(connector.getValidatorCacheStatistics().get("size").longValue(), USERS);
+
+        connector.delete(ACCOUNT, new Uid(UserPayloads.id(1)), null);
+
+        Assert.assertEquals(connector.getDetailCacheStatistics().get("size").longValue(), USERS - 1);
+        Assert.assertEquals(connector.getValidatorCacheStatistics().get("size").longValue(), USERS - 1);
+    }
+
+    private SmartRecruitersConfiguration checkpointed() throws IOException {
+        checkpoints = Files.createTempDirectory("smartrecruiters-scan").toFile();
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setCheckpointDirectory(checkpoints.getAbsolutePath());
+        return configuration;
+    }
+
+    private OperationOptions scanId(String scanId) {
+        return new OperationOptionsBuilder().setOption(SmartRecruitersConnector.OP_SCAN_ID, scanId).build();
+    }
+
+    /**
+     * @return uids passed to the handler, listing fails after failAfter users
+     */
+    private List<String> scan(SmartRecruitersFilter query, OperationOptions options, final int failAfter) {
+        final List<String> uids = new ArrayList<String>();
+        try {
+            connector.executeQuery(ACCOUNT, query, new ResultsHandler() {
+                @Override
+                public boolean handle(ConnectorObject connectorObject) {
+                    if (uids.size() == failAfter) {
+                        throw new IllegalStateException("interrupted listing");
+                    }
+                    uids.add(connectorObject.getUid().getUidValue());
+                    return true;
+                }
+            }, options);
+        } catch (IllegalStateException e) {
+            // expected when failAfter was reached
+        }
+        return uids;
+    }
+
+    @Test
+    public void testScanResumedOnlyWithScanId() throws Exception {
+        init(checkpointed());
+        // pages 0 and 1 are completed
+        Assert.assertEquals(scan(null, scanId("scan-1"), 50).size(), 50);
+        Assert.assertEquals(checkpoints.list().length, 1);
+
+        // listing without scan id starts from the first page and keeps the checkpoint
+        Assert.assertEquals(findAll(), allIds());
+        Assert.assertEquals(checkpoints.list().length, 1);
+        // paged results cookie is opaque, it is not a scan id
+        OperationOptions cookie = new OperationOptionsBuilder().setPagedResultsCookie("scan-1").build();
+        Assert.assertEquals(scan(null, cookie, Integer.MAX_VALUE), allIds());
+        Assert.assertEquals(checkpoints.list().length, 1);
+
+        Assert.assertEquals(scan(null, scanId("scan-1"), Integer.MAX_VALUE), allIds().subList(2 * PAGE_SIZE, USERS));
+        Assert.assertEquals(checkpoints.list().length, 0);
+    }
+
+    @Test
+    public void testConcurrentScansAreIsolated() throws Exception {
+        init(checkpointed());
+        scan(null, scanId("scan-1"), 50);
+        scan(null, scanId("scan-2"), 90);
+        Assert.assertEquals(checkpoints.list().length, 2);
+
+        Assert.assertEquals(scan(null, scanId("scan-2"), Integer.MAX_VALUE), allIds().subList(4 * PAGE_SIZE, USERS));
+        Assert.assertEquals(scan(null, scanId("scan-1"), Integer.MAX_VALUE), allIds().subList(2 * PAGE_SIZE, USERS));
+        Assert.assertEquals(checkpoints.list().length, 0);
+    }
+
+    @Test
+    public void testFilteredScanIsNotCheckpointed() throws Exception {
+        init(checkpointed());
+        SmartRecruitersFilter query = new SmartRecruitersFilterTranslator().translate(
+                FilterBuilder.startsWith(AttributeBuilder.build(SmartRecruitersConnector.ATTR_FIRST_NAME, "First1"))).get(0);
+        // First1 and First10..19 on page 0, First100.. on page 5
+        Assert.assertEquals(scan(query, scanId("scan-1"), 15).size(), 15);
+        Assert.assertEquals(checkpoints.list().length, 0);
+
+        Assert.assertEquals(scan(null, scanId("scan-1"), Integer.MAX_VALUE), allIds());
+    }
+
+    /**
+     * @return uids of the synchronized users, token of the last one is in lastToken[0]
+     */
+    private List<String> sync(SyncToken token, final int limit, final SyncToken[] lastToken) {
+        final List<String> uids = new ArrayList<String>();
+        connector.sync(ACCOUNT, token, new SyncResultsHandler() {
+            @Override
+            public boolean handle(SyncDelta delta) {
+                uids.add(delta.getUid().getUidValue());
+                lastToken[0] = delta.getToken();
+                return uids.size() < limit;
+            }
+        }, null);
+        return uids;
+    }
+
+    @Test
+    public void testSyncStoppedInUsersChangedAtSameTime() {
+        init(configuration());
+        SyncToken latest = connector.getLatestSyncToken(ACCOUNT);
+        // five users changed at the same time, later than the token
+        String changedOn = "2017-01-01T10:00:00.000Z";
+        for (int i : new int[]{7, 3, 90, 41, 12}) {
+            server.getUser(UserPayloads.id(i)).put(SmartRecruitersConnector.ATTR_UPDATED_ON, changedOn);
+        }
+
+        SyncToken[] lastToken = new SyncToken[1];
+        // the latest user is repeated, token without id includes its time
+        Assert.assertEquals(sync(latest, 3, lastToken), Arrays.asList(UserPayloads.id(55), UserPayloads.id(3), UserPayloads.id(7)));
+        // rest of the users with the same updatedOn is not lost
+        Assert.assertEquals(sync(lastToken[0], Integer.MAX_VALUE, lastToken),
+                Arrays.asList(UserPayloads.id(12), UserPayloads.id(41), UserPayloads.id(90)));
+        Assert.assertEquals(sync(lastToken[0], Integer.MAX_VALUE, lastToken), Collections.<String>emptyList());
+    }
+
+    @Test
+    public void testSyncFromLatestTokenRepeatsItsTime() {
+        init(configuration());
+        SyncToken latest = connector.getLatestSyncToken(ACCOUNT);
+        Assert.assertEquals(latest.getValue(), "2016-05-28T10:55:00.000Z");
+
+        // user changed at the same time as the latest one, but after the token was read
+        server.getUser(UserPayloads.id(0)).put(SmartRecruitersConnector.ATTR_UPDATED_ON, latest.getValue());
+
+        List<String> uids = sync(latest, Integer.MAX_VALUE, new SyncToken[1]);
+        Assert.assertEquals(uids, Arrays.asList(UserPayloads.id(0), UserPayloads.id(55)));
+    }
+
+    @Test
+    public void testSyncSkipsUserWithInvalidUpdatedOn() {
+        init(configuration());
+        SyncToken latest = connector.getLatestSyncToken(ACCOUNT);
+        server.getUser(UserPayloads.id(0)).put(SmartRecruitersConnector.ATTR_UPDATED_ON, latest.getValue());
+        server.getUser(UserPayloads.id(3)).put(SmartRecruitersConnector.ATTR_UPDATED_ON, "not-a-date");
+
+        // user with unreadable time does not stop synchronization of the others
+        List<String> uids = sync(latest, Integer.MAX_VALUE, new SyncToken[1]);
+        Assert.assertEquals(uids, Arrays.asList(UserPayloads.id(0), UserPayloads.id(55)));
+    }
+}
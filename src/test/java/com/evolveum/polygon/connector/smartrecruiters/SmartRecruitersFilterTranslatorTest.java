@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+/**
+ * @author gpalos
+ */
+public class SmartRecruitersFilterTranslatorTest {
+
+    private static final Filter BY_UID = FilterBuilder.equalTo(new Uid("5a1b"));
+    private static final Filter BY_EMAIL = FilterBuilder.equalTo(new Name("john.doe@example.com"));
+    private static final Filter BY_FIRST_NAME = FilterBuilder.equalTo(AttributeBuilder.build(SmartRecruitersConnector.ATTR_FIRST_NAME, "John"));
+    private static final Filter BY_ROLE = FilterBuilder.equalTo(AttributeBuilder.build(SmartRecruitersConnector.ATTR_ROLE, "ADMINISTRATOR"));
+    private static final Filter UPDATED_AFTER = FilterBuilder.greaterThan(
+            AttributeBuilder.build(SmartRecruitersConnector.ATTR_UPDATED_ON, "2016-05-01T10:00:00.000Z"));
+
+    private List<SmartRecruitersFilter> translate(Filter filter) {
+        return new SmartRecruitersFilterTranslator().translate(filter);
+    }
+
+    private SmartRecruitersFilter translateOne(Filter filter) {
+        List<SmartRecruitersFilter> filters = translate(filter);
+        Assert.assertEquals(filters.size(), 1, "filters: " + filters);
+        return filters.get(0);
+    }
+
+    private ConnectorObject user(String uid, String firstName, String role, String updatedOn) {
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setUid(uid);
+        builder.setName(uid + "@example.com");
+        builder.addAttribute(SmartRecruitersConnector.ATTR_FIRST_NAME, firstName);
+        builder.addAttribute(SmartRecruitersConnector.ATTR_ROLE, role);
+        builder.addAttribute(SmartRecruitersConnector.ATTR_UPDATED_ON, updatedOn);
+        return builder.build();
+    }
+
+    @Test
+    public void testUidAndEmailArePushedDown() {
+        SmartRecruitersFilter byUid = translateOne(BY_UID);
+        Assert.assertEquals(byUid.byUid, "5a1b");
+        Assert.assertNull(byUid.residual);
+
+        SmartRecruitersFilter byEmail = translateOne(BY_EMAIL);
+        Assert.assertEquals(byEmail.byEmailAddress, "john.doe@example.com");
+        Assert.assertNull(byEmail.residual);
+    }
+
+    @Test
+    public void testNameIsQueriedAndCheckedLocally() {
+        SmartRecruitersFilter filter = translateOne(BY_FIRST_NAME);
+
+        Assert.assertEquals(filter.byQuery, "John");
+        // full text search returns also other users
+        Assert.assertEquals(filter.residual, BY_FIRST_NAME);
+    }
+
+    @Test
+    public void testUnsupportedConditionIsResidual() {
+        SmartRecruitersFilter filter = translateOne(BY_ROLE);
+
+        Assert.assertFalse(filter.isPushedDown());
+        Assert.assertEquals(filter.residual, BY_ROLE);
+    }
+
+    @Test
+    public void testNotIsResidual() {
+        SmartRecruitersFilter filter = translateOne(FilterBuilder.not(BY_UID));
+
+        Assert.assertFalse(filter.isPushedDown());
+        Assert.assertTrue(filter.residual.accept(user("5a1c", "John", "EMPLOYEE", "2016-05-01T10:00:00.000Z")));
+        Assert.assertFalse(filter.residual.accept(user("5a1b", "John", "EMPLOYEE", "2016-05-01T10:00:00.000Z")));
+    }
+
+    @Test
+    public void testComparisonsAreResidual() {
+        Filter[] comparisons = {
+                UPDATED_AFTER,
+                FilterBuilder.greaterThanOrEqualTo(AttributeBuilder.build(SmartRecruitersConnector.ATTR_UPDATED_ON, "2016-05-01T10:00:00.000Z")),
+                FilterBuilder.lessThan(AttributeBuilder.build(SmartRecruitersConnector.ATTR_UPDATED_ON, "2016-05-01T10:00:00.000Z")),
+                FilterBuilder.lessThanOrEqualTo(AttributeBuilder.build(SmartRecruitersConnector.ATTR_UPDATED_ON, "2016-05-01T10:00:00.000Z"))
+        };
+        for (Filter comparison : comparisons) {
+            SmartRecruitersFilter filter = translateOne(comparison);
+            Assert.assertFalse(filter.isPushedDown());
+            Assert.assertEquals(filter.residual, comparison);
+        }
+
+        SmartRecruitersFilter not = translateOne(FilterBuilder.not(UPDATED_AFTER));
+        Assert.assertFalse(not.residual.accept(user("5a1b", "John", "EMPLOYEE", "2016-06-01T10:00:00.000Z")));
+        Assert.assertTrue(not.residual.accept(user("5a1b", "John", "EMPLOYEE", "2016-04-01T10:00:00.000Z")));
+    }
+
+    @Test
+    public void testComparisonInAndIsNotLost() {
+        // without translation the comparison would be dropped from the AND
+        SmartRecruitersFilter filter = translateOne(FilterBuilder.and(BY_EMAIL, UPDATED_AFTER));
+
+        Assert.assertEquals(filter.byEmailAddress, "john.doe@example.com");
+        Assert.assertEquals(filter.residual, UPDATED_AFTER);
+    }
+
+    @Test
+    public void testAndSearchesMostSelectiveCondition() {
+        SmartRecruitersFilter filter = translateOne(FilterBuilder.and(BY_FIRST_NAME, FilterBuilder.and(BY_EMAIL, BY_UID)));
+
+        Assert.assertEquals(filter.byUid, "5a1b");
+        Assert.assertNull(filter.byEmailAddress);
+        Assert.assertNull(filter.byQuery);
+        ConnectorObject john = user("5a1b", "John", "EMPLOYEE", "2016-05-01T10:00:00.000Z");
+        Assert.assertFalse(filter.residual.accept(john), "e-mail of 5a1b is 5a1b@example.com");
+    }
+
+    @Test
+    public void testAndKeepsResidualOfQuery() {
+        SmartRecruitersFilter filter = translateOne(FilterBuilder.and(BY_ROLE, BY_FIRST_NAME));
+
+        Assert.assertEquals(filter.byQuery, "John");
+        Assert.assertTrue(filter.residual.accept(user("5a1b", "John", "ADMINISTRATOR", "2016-05-01T10:00:00.000Z")));
+        Assert.assertFalse(filter.residual.accept(user("5a1b", "Johnny", "ADMINISTRATOR", "2016-05-01T10:00:00.000Z")));
+        Assert.assertFalse(filter.residual.accept(user("5a1b", "John", "EMPLOYEE", "2016-05-01T10:00:00.000Z")));
+    }
+
+    @Test
+    public void testOrOfPushedDownConditionsIsSplit() {
+        List<SmartRecruitersFilter> filters = translate(FilterBuilder.or(BY_UID, BY_EMAIL));
+
+        Assert.assertEquals(filters.size(), 2);
+        Assert.assertEquals(filters.get(0).byUid, "5a1b");
+        Assert.assertEquals(filters.get(1).byEmailAddress, "john.doe@example.com");
+    }
+
+    @Test
+    public void testOrWithResidualConditionIsResidual() {
+        SmartRecruitersFilter filter = translateOne(FilterBuilder.or(BY_UID, BY_ROLE));
+
+        Assert.assertFalse(filter.isPushedDown());
+        Assert.assertTrue(filter.residual.accept(user("5a1b", "John", "EMPLOYEE", "2016-05-01T10:00:00.000Z")));
+        Assert.assertTrue(filter.residual.accept(user("5a1c", "John", "ADMINISTRATOR", "2016-05-01T10:00:00.000Z")));
+        Assert.assertFalse(filter.residual.accept(user("5a1c", "John", "EMPLOYEE", "2016-05-01T10:00:00.000Z")));
+    }
+}
@@ -0,0 +1,296 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.exceptions.AlreadyExistsException;
+import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
+import org.identityconnectors.framework.common.objects.*;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput and failure handling against the in-process stand-in server, no SmartRecruiters tenant needed.
+ * Dataset size and latency can be changed with -Dstandin.users and -Dstandin.latency (ms). The suite is in the
+ * load group, which runs only with the load profile (mvn -Pload test). Every test has its own server, so the state
+ * shared per service address starts empty.
+ *
+ * @author gpalos
+ */
+@Test(groups = "load")
+public class StandInLoadTest {
+
+    private static final Log LOG = Log.getLog(StandInLoadTest.class);
+
+    private static final ObjectClass ACCOUNT = new ObjectClass(ObjectClass.ACCOUNT_NAME);
+
+    private static final int USERS = Integer.getInteger("standin.users", 2000);
+    private static final long LATENCY = Long.getLong("standin.latency", 0L);
+
+    private StandInServer server;
+    private SmartRecruitersConnector connector;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        server = new StandInServer(USERS);
+        server.start();
+    }
+
+    @AfterMethod
+    public void dispose() {
+        if (connector != null) {
+            LOG.info("request metrics: {0}", connector.getRequestMetrics());
+            connector.dispose();
+            connector = null;
+        }
+        server.stop();
+    }
+
+    private SmartRecruitersConfiguration configuration() {
+        SmartRecruitersConfiguration configuration = new SmartRecruitersConfiguration();
+        configuration.setServiceAddress(server.getServiceAddress());
+        configuration.setAuthMethod("TOKEN");
+        configuration.setTokenName("X-SmartToken");
+        configuration.setTokenValue(new GuardedString("stand-in".toCharArray()));
+        configuration.setPageSize(100);
+        configuration.setReadLocation(false);
+        configuration.setRetryBaseDelay(1);
+        configuration.setRetryMaxDelay(10);
+        return configuration;
+    }
+
+    private void init(SmartRecruitersConfiguration configuration) {
+        connector = new SmartRecruitersConnector();
+        connector.init(configuration);
+    }
+
+    private int findAll() {
+        return findAll(null);
+    }
+
+    private int findAll(OperationOptions options) {
+        final AtomicInteger count = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        connector.executeQuery(ACCOUNT, null, new ResultsHandler() {
+            @Override
+            public boolean handle(ConnectorObject connectorObject) {
+                count.incrementAndGet();
+                return true;
+            }
+        }, options);
+        long time = System.currentTimeMillis() - start;
+        LOG.info("listed {0} users in {1} ms ({2} users/s)", count.get(), time, time == 0 ? count.get() : count.get() * 1000L / time);
+        return count.get();
+    }
+
+    @Test
+    public void testFindAllSequential() {
+        server.setLatencyMillis(LATENCY);
+        init(configuration());
+        Assert.assertEquals(findAll(), server.size());
+    }
+
+    @Test
+    public void testFindAllParallelPagesAndDetails() {
+        server.setLatencyMillis(LATENCY);
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setReadLocation(true);
+        configuration.setPageFetchThreads(4);
+        configuration.setDetailFetchThreads(8);
+        configuration.setSharedConnectionPool(true);
+        init(configuration);
+        Assert.assertEquals(findAll(), server.size());
+    }
+
+    @Test
+    public void testFindAllAsyncTransport() {
+        server.setLatencyMillis(LATENCY);
+        server.setErrorEvery(50);
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setReadLocation(true);
+        configuration.setPageFetchThreads(4);
+        configuration.setOrderedResults(false);
+        configuration.setTransport(SmartRecruitersConfiguration.TRANSPORT_ASYNC);
+        init(configuration);
+        Assert.assertEquals(findAll(), server.size());
+    }
+
+    @Test
+    public void testFindAllHttp2Transport() {
+        if (!Http2Transport.isAvailable()) {
+            throw new SkipException("java.net.http is not available");
+        }
+        server.setLatencyMillis(LATENCY);
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setReadLocation(true);
+        configuration.setDetailFetchThreads(8);
+        configuration.setTransport(SmartRecruitersConfiguration.TRANSPORT_HTTP2);
+        init(configuration);
+        Assert.assertEquals(findAll(), server.size());
+    }
+
+    @Test
+    public void testFindAllCompressed() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setSharedConnectionPool(true);
+        configuration.setResponseCompression(true);
+        init(configuration);
+        Assert.assertEquals(findAll(), server.size());
+        Map<String, Long> metrics = connector.getRequestMetrics();
+        Assert.assertTrue(metrics.get("list.GET.bytesIn") < metrics.get("list.GET.bytesInUncompressed"));
+    }
+
+    @Test
+    public void testGetByUidConditional() {
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setValidatorCacheSize(100);
+        init(configuration);
+        SmartRecruitersFilter query = new SmartRecruitersFilter();
+        query.byUid = UserPayloads.id(1);
+        final AtomicInteger count = new AtomicInteger();
+        ResultsHandler handler = new ResultsHandler() {
+            @Override
+            public boolean handle(ConnectorObject connectorObject) {
+                Assert.assertEquals(connectorObject.getUid().getUidValue(), UserPayloads.id(1));
+                count.incrementAndGet();
+                return true;
+            }
+        };
+        long notModified = server.getNotModified();
+        connector.executeQuery(ACCOUNT, query, handler, null);
+        connector.executeQuery(ACCOUNT, query, handler, null);
+        Assert.assertEquals(count.get(), 2);
+        Assert.assertEquals(server.getNotModified(), notModified + 1);
+        Assert.assertEquals(connector.getValidatorCacheStatistics().get("notModified"), Long.valueOf(1));
+    }
+
+    @Test
+    public void testFindAllResumed() throws Exception {
+        File directory = Files.createTempDirectory("smartrecruiters-scan").toFile();
+        SmartRecruitersConfiguration configuration = configuration();
+        configuration.setCheckpointDirectory(directory.getAbsolutePath());
+        init(configuration);
+        OperationOptions scan = new OperationOptionsBuilder().setOption(SmartRecruitersConnector.OP_SCAN_ID, "load-test").build();
+        final AtomicInteger count = new AtomicInteger();
+        try {
+            connector.executeQuery(ACCOUNT, null, new ResultsHandler() {
+                @Override
+                public boolean handle(ConnectorObject connectorObject) {
+                    if (count.incrementAndGet() == 250) {
+                        throw new IllegalStateException("interrupted listing");
+                    }
+                    return true;
+                }
+            }, scan);
+            Assert.fail("listing was not interrupted");
+        } catch (IllegalStateException e) {
+            // expected, pages 0 and 1 are completed
+        }
+        Assert.assertEquals(directory.list().length, 1);
+        // only listing with the same scan id is resumed
+        Assert.assertEquals(findAll(), server.size());
+        Assert.assertEquals(findAll(scan), server.size() - 200);
+        Assert.assertEquals(directory.list().length, 0);
+        Assert.assertEquals(findAll(scan), server.size());
+        Assert.assertTrue(directory.delete());
+    }
+
+    @Test
+    public void testFindAllThrottled() {
+        server.setThrottleEvery(5, 0);
+        init(configuration());
+        Assert.assertEquals(findAll(), server.size());
+        Assert.assertTrue(server.getInjectedFailures() > 0);
+    }
+
+    @Test
+    public void testFindAllServerErrors() {
+        server.setErrorEvery(7);
+        init(configuration());
+        Assert.assertEquals(findAll(), server.size());
+        Assert.assertTrue(((Number) connector.getRetryStatistics().get("retries")).longValue() > 0);
+    }
+
+    @Test
+    public void testCreateAndUpdate() {
+        init(configuration());
+        int count = 50;
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            Set<Attribute> attributes = new HashSet<Attribute>();
+            attributes.add(AttributeBuilder.build(Name.NAME, "load" + i + "@example.com"));
+            attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_FIRST_NAME, "Load"));
+            attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LAST_NAME, "User" + i));
+            attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_ROLE, "EMPLOYEE"));
+            attributes.add(AttributeBuilder.build(OperationalAttributes.ENABLE_NAME, true));
+            Uid uid = connector.create(ACCOUNT, attributes, null);
+
+            Set<Attribute> changes = new HashSet<Attribute>();
+            changes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LAST_NAME, "Changed" + i));
+            changes.add(AttributeBuilder.build(OperationalAttributes.ENABLE_NAME, false));
+            connector.update(ACCOUNT, uid, changes, null);
+
+            Assert.assertEquals(server.getUser(uid.getUidValue()).getString(SmartRecruitersConnector.ATTR_LAST_NAME), "Changed" + i);
+            Assert.assertFalse(server.getUser(uid.getUidValue()).getBoolean(SmartRecruitersConnector.ATTR_ACTIVE));
+        }
+        LOG.info("created and updated {0} users in {1} ms", count, System.currentTimeMillis() - start);
+    }
+
+    @Test(expectedExceptions = AlreadyExistsException.class)
+    public void testCreateVisibleDuplicate() {
+        init(configuration());
+        Set<Attribute> attributes = new HashSet<Attribute>();
+        attributes.add(AttributeBuilder.build(Name.NAME, UserPayloads.email(1)));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_FIRST_NAME, "First"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LAST_NAME, "Last"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_ROLE, "EMPLOYEE"));
+        connector.create(ACCOUNT, attributes, null);
+    }
+
+    @Test(expectedExceptions = InvalidAttributeValueException.class)
+    public void testCreateWithoutName() {
+        init(configuration());
+        Set<Attribute> attributes = new HashSet<Attribute>();
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_FIRST_NAME, "First"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LAST_NAME, "Last"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_ROLE, "EMPLOYEE"));
+        connector.create(ACCOUNT, attributes, null);
+    }
+
+    @Test
+    public void testCreateForeignConflict() {
+        init(configuration());
+        server.addForeignEmail("foreign@example.com");
+        Set<Attribute> attributes = new HashSet<Attribute>();
+        attributes.add(AttributeBuilder.build(Name.NAME, "foreign@example.com"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_FIRST_NAME, "Foreign"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_LAST_NAME, "User"));
+        attributes.add(AttributeBuilder.build(SmartRecruitersConnector.ATTR_ROLE, "EMPLOYEE"));
+        Uid uid = connector.create(ACCOUNT, attributes, null);
+        Assert.assertTrue(uid.getUidValue().startsWith(SmartRecruitersConnector.CONFLICT));
+    }
+}
@@ -0,0 +1,464 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process stand-in for the SmartRecruiters /users API: list (offset, limit, q), detail, create, patch,
+ * activation and /me. Latency, 429 throttling, 5xx errors and 409 conflicts with users from other
+ * companies can be injected, so the connector can be load tested without a tenant.
+ * Every server has its own path, so the state connector instances share per service address (rate limiter,
+ * circuit breakers, caches, metrics) is never shared between two servers.
+ *
+ * @author gpalos
+ */
+public class StandInServer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final String contextPath = "/tenant" + INSTANCES.incrementAndGet() + "/users";
+
+    private final ConcurrentSkipListMap<String, JSONObject> users = new ConcurrentSkipListMap<String, JSONObject>();
+
+    /**
+     * e-mails used in other companies, not visible in the list but rejected with 409
+     */
+    private final Map<String, Boolean> foreignEmails = new ConcurrentHashMap<String, Boolean>();
+
+    private final AtomicInteger nextId;
+    private final AtomicLong requests = new AtomicLong();
+    private final ConcurrentHashMap<String, AtomicLong> requestsByMethod = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong injectedFailures = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    private volatile long latencyMillis;
+    private volatile int throttleEvery;
+    private volatile int retryAfterSeconds;
+    private volatile int errorEvery;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param size number of generated users
+     */
+    public StandInServer(int size) {
+        for (int i = 0; i < size; i++) {
+            JSONObject user = UserPayloads.detailUser(i);
+            users.put(user.getString(SmartRecruitersConnector.ATTR_ID), user);
+        }
+        nextId = new AtomicInteger(size);
+    }
+
+    /**
+     * @return service address of the users API
+     */
+    public String start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(contextPath, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    dispatch(exchange);
+                } catch (RuntimeException e) {
+                    send(exchange, 500, new JSONObject().put("message", String.valueOf(e)));
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        return getServiceAddress();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public String getServiceAddress() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + contextPath;
+    }
+
+    /**
+     * Every response is delayed.
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Every n-th request is rejected with 429 Too Many Requests, 0 - never.
+     */
+    public void setThrottleEvery(int throttleEvery, int retryAfterSeconds) {
+        this.throttleEvery = throttleEvery;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Every n-th request fails with 503 Service Unavailable, 0 - never.
+     */
+    public void setErrorEvery(int errorEvery) {
+        this.errorEvery = errorEvery;
+    }
+
+    /**
+     * E-mail used by a user of other company, create and update with it returns 409.
+     */
+    public void addForeignEmail(String email) {
+        foreignEmails.put(email.toLowerCase(Locale.ROOT), Boolean.TRUE);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    public JSONObject getUser(String id) {
+        return users.get(id);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getRequests(String method) {
+        AtomicLong count = requestsByMethod.get(method);
+        return count == null ? 0 : count.get();
+    }
+
+    public long getInjectedFailures() {
+        return injectedFailures.get();
+    }
+
+    /**
+     * @return detail requests answered with 304 Not Modified
+     */
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        long count = requests.incrementAndGet();
+        String method = exchange.getRequestMethod();
+        AtomicLong byMethod = requestsByMethod.putIfAbsent(method, new AtomicLong(1));
+        if (byMethod != null) {
+            byMethod.incrementAndGet();
+        }
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (throttleEvery > 0 && count % throttleEvery == 0) {
+            injectedFailures.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+            send(exchange, 429, new JSONObject().put("message", "Too many requests"));
+            return;
+        }
+        if (errorEvery > 0 && count % errorEvery == 0) {
+            injectedFailures.incrementAndGet();
+            send(exchange, 503, new JSONObject().put("message", "Service unavailable"));
+            return;
+        }
+
+        String[] path = exchange.getRequestURI().getPath().substring(contextPath.length()).split("/");
+        // "", id, activation
+        String id = path.length > 1 ? path[1] : null;
+        if (id == null || id.isEmpty()) {
+            if ("GET".equals(method)) {
+                list(exchange);
+            } else if ("POST".equals(method)) {
+                create(exchange);
+            } else {
+                send(exchange, 405, null);
+            }
+        } else if ("me".equals(id) && "GET".equals(method)) {
+            send(exchange, 200, new JSONObject().put(SmartRecruitersConnector.ATTR_ID, "me")
+                    .put(SmartRecruitersConnector.ATTR_EMAIL, "integration@example.com"));
+        } else if (path.length > 2 && "activation".equals(path[2])) {
+            activation(exchange, id, method);
+        } else if ("GET".equals(method)) {
+            detail(exchange, id);
+        } else if ("PATCH".equals(method)) {
+            patch(exchange, id);
+        } else {
+            send(exchange, 405, null);
+        }
+    }
+
+    /**
+     * User detail with ETag, 304 when If-None-Match is the current ETag.
+     */
+    private void detail(HttpExchange exchange, String id) throws IOException {
+        JSONObject user = users.get(id);
+        if (user == null) {
+            send(exchange, 404, null);
+            return;
+        }
+        String etag;
+        synchronized (user) {
+            etag = "\"" + Integer.toHexString(user.toString().hashCode()) + "\"";
+        }
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModified.incrementAndGet();
+            send(exchange, 304, null);
+            return;
+        }
+        send(exchange, 200, user);
+    }
+
+    private void list(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+        int offset = parameters.containsKey("offset") ? Integer.parseInt(parameters.get("offset")) : 0;
+        int limit = parameters.containsKey("limit") ? Integer.parseInt(parameters.get("limit")) : 10;
+        String q = parameters.get("q");
+        if (q != null) {
+            q = q.toLowerCase(Locale.ROOT);
+        }
+
+        JSONArray content = new JSONArray();
+        int found = 0;
+        for (JSONObject user : users.values()) {
+            if (q != null && !matches(user, q)) {
+                continue;
+            }
+            if (found >= offset && found < offset + limit) {
+                content.put(listUser(user));
+            }
+            found++;
+        }
+        JSONObject page = new JSONObject();
+        page.put("totalFound", found);
+        page.put("offset", offset);
+        page.put("limit", limit);
+        page.put("content", content);
+        send(exchange, 200, page);
+    }
+
+    private void create(HttpExchange exchange) throws IOException {
+        JSONObject request = new JSONObject(new JSONTokener(new InputStreamReader(exchange.getRequestBody(), UTF_8)));
+        String email = request.optString(SmartRecruitersConnector.ATTR_EMAIL, null);
+        if (email == null) {
+            send(exchange, 400, new JSONObject().put("message", "email is required"));
+            return;
+        }
+        if (isUsed(email, null)) {
+            send(exchange, 409, new JSONObject().put("message", "User with email " + email + " already exists"));
+            return;
+        }
+        JSONObject user = new JSONObject();
+        for (String key : JSONObject.getNames(request)) {
+            if (SmartRecruitersConnector.ATTR_PASSWORD.equals(key)) {
+                continue;
+            }
+            Object value = request.get(key);
+            if (SmartRecruitersConnector.ATTR_LOCATION.equals(key) && value instanceof JSONArray) {
+                // connector sends location appended to an array
+                value = ((JSONArray) value).getJSONObject(0);
+            }
+            user.put(key, value);
+        }
+        String id = UserPayloads.id(nextId.getAndIncrement());
+        user.put(SmartRecruitersConnector.ATTR_ID, id);
+        user.put(SmartRecruitersConnector.ATTR_ACTIVE, true);
+        user.put(SmartRecruitersConnector.ATTR_UPDATED_ON, now());
+        users.put(id, user);
+        send(exchange, 201, user);
+    }
+
+    private void patch(HttpExchange exchange, String id) throws IOException {
+        JSONArray operations = new JSONArray(new JSONTokener(new InputStreamReader(exchange.getRequestBody(), UTF_8)));
+        JSONObject user = users.get(id);
+        if (user == null) {
+            send(exchange, 404, null);
+            return;
+        }
+        synchronized (user) {
+            for (int i = 0; i < operations.length(); i++) {
+                JSONObject operation = operations.getJSONObject(i);
+                String[] path = operation.getString("path").substring(1).split("/");
+                if (SmartRecruitersConnector.ATTR_EMAIL.equals(path[0]) && "add".equals(operation.getString("op"))
+                        && isUsed(operation.getString("value"), id)) {
+                    send(exchange, 409, new JSONObject().put("message", "E-mail already used"));
+                    return;
+                }
+            }
+            for (int i = 0; i < operations.length(); i++) {
+                JSONObject operation = operations.getJSONObject(i);
+                String[] path = operation.getString("path").substring(1).split("/");
+                JSONObject target = user;
+                if (path.length > 1) {
+                    target = user.optJSONObject(path[0]);
+                    if (target == null) {
+                        target = new JSONObject();
+                        user.put(path[0], target);
+                    }
+                }
+                String field = path[path.length - 1];
+                if (SmartRecruitersConnector.ATTR_PASSWORD.equals(field)) {
+                    continue;
+                }
+                if ("remove".equals(operation.getString("op"))) {
+                    target.remove(field);
+                } else {
+                    target.put(field, operation.get("value"));
+                }
+            }
+            user.put(SmartRecruitersConnector.ATTR_UPDATED_ON, now());
+            send(exchange, 200, user);
+        }
+    }
+
+    private void activation(HttpExchange exchange, String id, String method) throws IOException {
+        JSONObject user = users.get(id);
+        if (user == null) {
+            send(exchange, 404, null);
+            return;
+        }
+        synchronized (user) {
+            if ("PUT".equals(method)) {
+                user.put(SmartRecruitersConnector.ATTR_ACTIVE, true);
+            } else if ("DELETE".equals(method)) {
+                user.put(SmartRecruitersConnector.ATTR_ACTIVE, false);
+            } else {
+                send(exchange, 405, null);
+                return;
+            }
+            user.put(SmartRecruitersConnector.ATTR_UPDATED_ON, now());
+        }
+        send(exchange, 204, null);
+    }
+
+    private boolean isUsed(String email, String exceptId) {
+        if (foreignEmails.containsKey(email.toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        for (JSONObject user : users.values()) {
+            if (email.equalsIgnoreCase(user.optString(SmartRecruitersConnector.ATTR_EMAIL))
+                    && !user.getString(SmartRecruitersConnector.ATTR_ID).equals(exceptId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(JSONObject user, String q) {
+        return user.optString(SmartRecruitersConnector.ATTR_EMAIL).toLowerCase(Locale.ROOT).contains(q)
+                || user.optString(SmartRecruitersConnector.ATTR_FIRST_NAME).toLowerCase(Locale.ROOT).contains(q)
+                || user.optString(SmartRecruitersConnector.ATTR_LAST_NAME).toLowerCase(Locale.ROOT).contains(q);
+    }
+
+    /**
+     * @return user with the fields returned in the list
+     */
+    private JSONObject listUser(JSONObject user) {
+        JSONObject listUser = new JSONObject();
+        synchronized (user) {
+            for (String key : JSONObject.getNames(user)) {
+                if (!SmartRecruitersConnector.ATTR_LOCATION.equals(key)
+                        && !SmartRecruitersConnector.ATTR_EXTERNAL_DATA.equals(key)
+                        && !SmartRecruitersConnector.ATTR_SSO_IDENTIFIER.equals(key)) {
+                    listUser.put(key, user.get(key));
+                }
+            }
+        }
+        return listUser;
+    }
+
+    private Map<String, String> parameters(String query) throws IOException {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(parameter.substring(0, separator), URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    private String now() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date());
+    }
+
+    private void send(HttpExchange exchange, int statusCode, Object body) throws IOException {
+        if (body == null || statusCode == 204) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+        byte[] bytes;
+        synchronized (body) {
+            bytes = body.toString().getBytes(UTF_8);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(bytes);
+            gzip.close();
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.flush();
+    }
+}
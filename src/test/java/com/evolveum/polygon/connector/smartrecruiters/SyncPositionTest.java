@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.identityconnectors.framework.common.exceptions.InvalidAttributeValueException;
+import org.json.JSONObject;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author gpalos
+ */
+public class SyncPositionTest {
+
+    private static final long MAY_1_2016 = 1462096800000L; // 2016-05-01T10:00:00.000Z
+
+    private JSONObject user(String id, String updatedOn) {
+        return new JSONObject().put(SmartRecruitersConnector.ATTR_ID, id).put(SmartRecruitersConnector.ATTR_UPDATED_ON, updatedOn);
+    }
+
+    @Test
+    public void testParseMilliseconds() {
+        Assert.assertEquals(SyncPosition.parseUpdatedOn("2016-05-01T10:00:00.123Z"), MAY_1_2016 + 123);
+    }
+
+    @Test
+    public void testParseWithoutFraction() {
+        Assert.assertEquals(SyncPosition.parseUpdatedOn("2016-05-01T10:00:00Z"), MAY_1_2016);
+    }
+
+    @Test
+    public void testParseShortFraction() {
+        Assert.assertEquals(SyncPosition.parseUpdatedOn("2016-05-01T10:00:00.5Z"), MAY_1_2016 + 500);
+        Assert.assertEquals(SyncPosition.parseUpdatedOn("2016-05-01T10:00:00.05Z"), MAY_1_2016 + 50);
+    }
+
+    @Test
+    public void testParseLongFraction() {
+        // microseconds and nanoseconds are not read as milliseconds
+        Assert.assertEquals(SyncPosition.parseUpdatedOn("2016-05-01T10:00:00.123456Z"), MAY_1_2016 + 123);
+        Assert.assertEquals(SyncPosition.parseUpdatedOn("2016-05-01T10:00:00.999999999Z"), MAY_1_2016 + 999);
+    }
+
+    @Test
+    public void testParseOffsets() {
+        Assert.assertEquals(SyncPosition.parseUpdatedOn("2016-05-01T12:00:00.000+02:00"), MAY_1_2016);
+        Assert.assertEquals(SyncPosition.parseUpdatedOn("2016-05-01T12:00:00.000+0200"), MAY_1_2016);
+        Assert.assertEquals(SyncPosition.parseUpdatedOn("2016-05-01T12:00:00+02"), MAY_1_2016);
+        Assert.assertEquals(SyncPosition.parseUpdatedOn("2016-05-01T08:30:00.000-01:30"), MAY_1_2016);
+    }
+
+    @Test(expectedExceptions = InvalidAttributeValueException.class)
+    public void testParseInvalidDate() {
+        // lenient parser would read it as 2016-05-02T10:00:00
+        SyncPosition.parseUpdatedOn("2016-05-01T34:00:00.000Z");
+    }
+
+    @Test(expectedExceptions = InvalidAttributeValueException.class)
+    public void testParseTrailingCharacters() {
+        SyncPosition.parseUpdatedOn("2016-05-01T10:00:00.000Zoo");
+    }
+
+    @Test(expectedExceptions = InvalidAttributeValueException.class)
+    public void testParseWithoutZone() {
+        SyncPosition.parseUpdatedOn("2016-05-01T10:00:00.000");
+    }
+
+    @Test
+    public void testTokenRoundTrip() {
+        SyncPosition position = SyncPosition.of(user("b", "2016-05-01T10:00:00.000Z"));
+        Assert.assertEquals(position.toToken(), "2016-05-01T10:00:00.000Z|b");
+        Assert.assertEquals(SyncPosition.parse(position.toToken()), position);
+        Assert.assertEquals(SyncPosition.parse(position.toToken()).getTime(), MAY_1_2016);
+    }
+
+    @Test
+    public void testOrderByTimeThenId() {
+        SyncPosition earlier = SyncPosition.of(user("z", "2016-05-01T10:00:00.000Z"));
+        SyncPosition sameTimeA = SyncPosition.of(user("a", "2016-05-01T10:00:01.000Z"));
+        SyncPosition sameTimeB = SyncPosition.of(user("b", "2016-05-01T10:00:01.000Z"));
+        SyncPosition later = SyncPosition.of(user("a", "2016-05-01T10:00:02.000Z"));
+
+        List<SyncPosition> positions = new ArrayList<SyncPosition>(Arrays.asList(later, sameTimeB, earlier, sameTimeA));
+        Collections.sort(positions);
+        Assert.assertEquals(positions, Arrays.asList(earlier, sameTimeA, sameTimeB, later));
+    }
+
+    @Test
+    public void testSameTimeAfterTokenId() {
+        SyncPosition token = SyncPosition.parse("2016-05-01T10:00:00.000Z|b");
+
+        Assert.assertFalse(SyncPosition.of(user("a", "2016-05-01T10:00:00.000Z")).isAfter(token));
+        Assert.assertFalse(SyncPosition.of(user("b", "2016-05-01T10:00:00.000Z")).isAfter(token));
+        Assert.assertTrue(SyncPosition.of(user("c", "2016-05-01T10:00:00.000Z")).isAfter(token));
+        Assert.assertTrue(SyncPosition.of(user("a", "2016-05-01T10:00:00.001Z")).isAfter(token));
+        Assert.assertFalse(SyncPosition.of(user("z", "2016-05-01T09:59:59.999Z")).isAfter(token));
+    }
+
+    @Test
+    public void testTokenWithoutIdIncludesItsTime() {
+        // token of older connector version
+        SyncPosition token = SyncPosition.parse("2016-05-01T10:00:00.000Z");
+
+        Assert.assertTrue(SyncPosition.of(user("a", "2016-05-01T10:00:00.000Z")).isAfter(token));
+        Assert.assertFalse(SyncPosition.of(user("a", "2016-05-01T09:59:59.999Z")).isAfter(token));
+        Assert.assertEquals(SyncPosition.of(user("a", "2016-05-01T10:00:00.000Z")).withoutId(), token);
+    }
+
+    @Test
+    public void testSameInstantInOtherFormat() {
+        // same time written differently, order is by time, not by text
+        SyncPosition token = SyncPosition.parse("2016-05-01T12:00:00.000+02:00|b");
+
+        Assert.assertFalse(SyncPosition.of(user("a", "2016-05-01T10:00:00Z")).isAfter(token));
+        Assert.assertTrue(SyncPosition.of(user("c", "2016-05-01T10:00:00Z")).isAfter(token));
+    }
+
+    @Test
+    public void testUserWithoutUpdatedOn() {
+        Assert.assertNull(SyncPosition.of(new JSONObject().put(SmartRecruitersConnector.ATTR_ID, "a")));
+        Assert.assertTrue(SyncPosition.of(user("a", "2016-05-01T10:00:00.000Z")).isAfter(null));
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.json.JSONObject;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author gpalos
+ */
+public class UserDetailCacheTest {
+
+    private static final String CHANGED_ON = "2017-01-01T10:00:00.000Z";
+
+    private JSONObject user(int i) {
+        return UserPayloads.detailUser(i);
+    }
+
+    private String updatedOn(int i) {
+        return user(i).getString(SmartRecruitersConnector.ATTR_UPDATED_ON);
+    }
+
+    @Test
+    public void testHitWithSameUpdatedOn() {
+        UserDetailCache cache = new UserDetailCache(10, 0);
+        cache.put(UserPayloads.id(1), user(1));
+
+        Assert.assertNotNull(cache.get(UserPayloads.id(1), updatedOn(1)));
+        Assert.assertEquals(cache.getHits(), 1);
+        Assert.assertEquals(cache.getMisses(), 0);
+    }
+
+    @Test
+    public void testChangedUserIsRemoved() {
+        UserDetailCache cache = new UserDetailCache(10, 0);
+        cache.put(UserPayloads.id(1), user(1));
+
+        Assert.assertNull(cache.get(UserPayloads.id(1), CHANGED_ON));
+        Assert.assertEquals(cache.size(), 0);
+        Assert.assertNull(cache.get(UserPayloads.id(1), updatedOn(1)));
+        Assert.assertEquals(cache.getMisses(), 2);
+    }
+
+    @Test
+    public void testListUserWithoutUpdatedOnIsMiss() {
+        UserDetailCache cache = new UserDetailCache(10, 0);
+        cache.put(UserPayloads.id(1), user(1));
+
+        Assert.assertNull(cache.get(UserPayloads.id(1), null));
+    }
+
+    @Test
+    public void testUserWithoutUpdatedOnIsNotCached() {
+        UserDetailCache cache = new UserDetailCache(10, 0);
+        JSONObject user = user(1);
+        user.remove(SmartRecruitersConnector.ATTR_UPDATED_ON);
+        cache.put(UserPayloads.id(1), user);
+
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        UserDetailCache cache = new UserDetailCache(10, 1);
+        cache.put(UserPayloads.id(1), user(1));
+        Thread.sleep(10);
+
+        Assert.assertNull(cache.get(UserPayloads.id(1), updatedOn(1)));
+        Assert.assertNull(cache.get(UserPayloads.id(1)));
+        Assert.assertEquals(cache.getEvictions(), 1);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        UserDetailCache cache = new UserDetailCache(2, 0);
+        cache.put(UserPayloads.id(1), user(1));
+        cache.put(UserPayloads.id(2), user(2));
+        // 1 is used more recently than 2
+        Assert.assertNotNull(cache.get(UserPayloads.id(1), updatedOn(1)));
+        cache.put(UserPayloads.id(3), user(3));
+
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertEquals(cache.getEvictions(), 1);
+        Assert.assertNull(cache.get(UserPayloads.id(2)));
+        Assert.assertNotNull(cache.get(UserPayloads.id(1)));
+        Assert.assertNotNull(cache.get(UserPayloads.id(3)));
+    }
+
+    @Test
+    public void testGetWithoutUpdatedOnCheck() {
+        UserDetailCache cache = new UserDetailCache(10, 0);
+        cache.put(UserPayloads.id(1), user(1));
+
+        Assert.assertNotNull(cache.get(UserPayloads.id(1)));
+        cache.remove(UserPayloads.id(1));
+        Assert.assertNull(cache.get(UserPayloads.id(1)));
+    }
+
+    @Test
+    public void testSharedInstanceIsResized() {
+        String serviceAddress = "http://detail-cache-test/" + System.nanoTime();
+        UserDetailCache cache = UserDetailCache.getInstance(serviceAddress, 3, 0);
+        cache.put(UserPayloads.id(1), user(1));
+        cache.put(UserPayloads.id(2), user(2));
+        cache.put(UserPayloads.id(3), user(3));
+
+        Assert.assertSame(UserDetailCache.getInstance(serviceAddress, 1, 0), cache);
+        Assert.assertEquals(cache.size(), 1);
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author gpalos
+ */
+public class UserPageReaderTest {
+
+    private final List<JSONObject> users = new ArrayList<JSONObject>();
+
+    private UserPage read(String json, final int limit) throws IOException {
+        users.clear();
+        return new UserPageReader(new StringReader(json)).read(new UserPageReader.UserHandler() {
+            @Override
+            public boolean handle(JSONObject user) {
+                users.add(user);
+                return users.size() < limit;
+            }
+        });
+    }
+
+    @Test
+    public void testReadPage() throws IOException {
+        UserPage page = read(UserPayloads.page(250, 100, 100).toString(), Integer.MAX_VALUE);
+
+        Assert.assertEquals(page.getTotalFound(), 250);
+        Assert.assertEquals(page.getOffset(), 100);
+        Assert.assertEquals(page.getLimit(), 100);
+        Assert.assertEquals(page.getCount(), 100);
+        Assert.assertFalse(page.isStopped());
+        Assert.assertEquals(users.size(), 100);
+        Assert.assertEquals(users.get(0).toString(), UserPayloads.listUser(100).toString());
+        Assert.assertEquals(users.get(99).getString(SmartRecruitersConnector.ATTR_ID), UserPayloads.id(199));
+    }
+
+    @Test
+    public void testContentBeforePaging() throws IOException {
+        UserPage page = read("{\"content\": [{\"id\": \"a\", \"location\": {\"city\": \"Bratislava\"}}, {\"id\": \"b\"}],"
+                + " \"totalFound\": 2, \"offset\": 0, \"limit\": 10}", Integer.MAX_VALUE);
+
+        Assert.assertEquals(page.getTotalFound(), 2);
+        Assert.assertEquals(page.getLimit(), 10);
+        Assert.assertEquals(page.getCount(), 2);
+        Assert.assertEquals(users.get(0).getJSONObject("location").getString("city"), "Bratislava");
+        Assert.assertEquals(users.get(1).getString("id"), "b");
+    }
+
+    @Test
+    public void testStoppedByHandler() throws IOException {
+        UserPage page = read(UserPayloads.page(250, 0, 100).toString(), 3);
+
+        Assert.assertTrue(page.isStopped());
+        Assert.assertEquals(page.getCount(), 3);
+        Assert.assertEquals(users.size(), 3);
+    }
+
+    @Test
+    public void testEmptyAndNullContent() throws IOException {
+        UserPage page = read("{\"totalFound\": 0, \"content\": []}", Integer.MAX_VALUE);
+        Assert.assertEquals(page.getCount(), 0);
+        Assert.assertEquals(page.getTotalFound(), 0);
+
+        page = read("{\"totalFound\": 0, \"content\": null, \"offset\": 0}", Integer.MAX_VALUE);
+        Assert.assertEquals(page.getCount(), 0);
+        Assert.assertEquals(page.getOffset(), 0);
+    }
+
+    @Test
+    public void testUnknownFieldsAreSkipped() throws IOException {
+        UserPage page = read("{\"links\": {\"next\": \"?offset=10\"}, \"tags\": [1, 2], \"totalFound\": 1,"
+                + " \"content\": [{\"id\": \"a\"}]}", Integer.MAX_VALUE);
+
+        Assert.assertEquals(page.getTotalFound(), 1);
+        Assert.assertEquals(page.getCount(), 1);
+        Assert.assertEquals(page.getOffset(), -1);
+    }
+
+    @Test(expectedExceptions = JSONException.class)
+    public void testContentWithoutUsers() throws IOException {
+        read("{\"content\": [1, 2]}", Integer.MAX_VALUE);
+    }
+
+    @Test(expectedExceptions = JSONException.class)
+    public void testNotObject() throws IOException {
+        read("[{\"id\": \"a\"}]", Integer.MAX_VALUE);
+    }
+}
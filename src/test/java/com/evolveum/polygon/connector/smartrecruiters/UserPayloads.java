@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+
+/**
+ * Generated SmartRecruiters users shaped like the /users API responses.
+ *
+ * @author gpalos
+ */
+public class UserPayloads {
+
+    private static final String[] ROLES = {"EMPLOYEE", "RESTRICTED", "STANDARD", "EXTENDED", "ADMINISTRATOR"};
+
+    public static String id(int i) {
+        return String.format("%024x", 0x5a0000000000L + i);
+    }
+
+    public static String email(int i) {
+        return "user" + i + "@example.com";
+    }
+
+    /**
+     * @return user as returned in the list (only basic fields)
+     */
+    public static JSONObject listUser(int i) {
+        JSONObject user = new JSONObject();
+        user.put(SmartRecruitersConnector.ATTR_ID, id(i));
+        user.put(SmartRecruitersConnector.ATTR_EMAIL, email(i));
+        user.put(SmartRecruitersConnector.ATTR_FIRST_NAME, "First" + i);
+        user.put(SmartRecruitersConnector.ATTR_LAST_NAME, "Last" + i);
+        user.put(SmartRecruitersConnector.ATTR_ROLE, ROLES[i % ROLES.length]);
+        user.put(SmartRecruitersConnector.ATTR_ACTIVE, i % 10 != 0);
+        user.put(SmartRecruitersConnector.ATTR_UPDATED_ON, String.format("2016-05-%02dT10:%02d:%02d.000Z", 1 + i % 28, i % 60, (i / 60) % 60));
+        return user;
+    }
+
+    /**
+     * @return user as returned by GET /{id}
+     */
+    public static JSONObject detailUser(int i) {
+        JSONObject user = listUser(i);
+        user.put(SmartRecruitersConnector.ATTR_EXTERNAL_DATA, "employee-" + i);
+        user.put(SmartRecruitersConnector.ATTR_SSO_IDENTIFIER, "sso-" + i);
+        JSONObject location = new JSONObject();
+        location.put(SmartRecruitersConnector.ATTR_LOCATION_COUNTRY, "Slovakia");
+        location.put(SmartRecruitersConnector.ATTR_LOCATION_COUNTRY_COODE, "sk");
+        location.put(SmartRecruitersConnector.ATTR_LOCATION_REGION_CODE, "BL");
+        location.put(SmartRecruitersConnector.ATTR_LOCATION_REGION, "Bratislava Region");
+        location.put(SmartRecruitersConnector.ATTR_LOCATION_CITY, "Bratislava");
+        location.put(SmartRecruitersConnector.ATTR_LOCATION_ADDRESS, "Street " + i);
+        location.put(SmartRecruitersConnector.ATTR_LOCATION_POSTAL_CODE, "811 0" + (i % 10));
+        location.put(SmartRecruitersConnector.ATTR_LOCATION_LONGITUDE, "17.1077");
+        location.put(SmartRecruitersConnector.ATTR_LOCATION_LATITUDE, "48.1486");
+        user.put(SmartRecruitersConnector.ATTR_LOCATION, location);
+        return user;
+    }
+
+    /**
+     * @return list response with users offset .. offset + limit - 1 of totalFound users
+     */
+    public static JSONObject page(int totalFound, int offset, int limit) {
+        JSONArray content = new JSONArray();
+        for (int i = offset; i < Math.min(totalFound, offset + limit); i++) {
+            content.put(listUser(i));
+        }
+        JSONObject page = new JSONObject();
+        page.put("totalFound", totalFound);
+        page.put("offset", offset);
+        page.put("limit", limit);
+        page.put("content", content);
+        return page;
+    }
+
+    public static byte[] bytes(JSONObject json) {
+        return json.toString().getBytes(Charset.forName("UTF-8"));
+    }
+}
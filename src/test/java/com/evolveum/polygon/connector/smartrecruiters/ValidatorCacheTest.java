@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2016 Evolveum
+ * <p/>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.evolveum.polygon.connector.smartrecruiters;
+
+import org.json.JSONObject;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author gpalos
+ */
+public class ValidatorCacheTest {
+
+    private JSONObject user(int i) {
+        return UserPayloads.detailUser(i);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        ValidatorCache cache = new ValidatorCache(10);
+        cache.put(UserPayloads.id(1), "\"etag-1\"", "Sun, 01 May 2016 10:00:00 GMT", user(1));
+
+        ValidatorCache.Entry entry = cache.get(UserPayloads.id(1));
+        Assert.assertEquals(entry.getEtag(), "\"etag-1\"");
+        Assert.assertEquals(entry.getLastModified(), "Sun, 01 May 2016 10:00:00 GMT");
+        Assert.assertEquals(entry.getUser().toString(), user(1).toString());
+        Assert.assertNull(cache.get(UserPayloads.id(2)));
+    }
+
+    @Test
+    public void testResponseWithoutValidatorsIsNotCached() {
+        ValidatorCache cache = new ValidatorCache(10);
+        cache.put(UserPayloads.id(1), "\"etag-1\"", null, user(1));
+
+        // newer response without validators replaces the cached one
+        cache.put(UserPayloads.id(1), null, null, user(1));
+        Assert.assertNull(cache.get(UserPayloads.id(1)));
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testRemove() {
+        ValidatorCache cache = new ValidatorCache(10);
+        cache.put(UserPayloads.id(1), "\"etag-1\"", null, user(1));
+        cache.put(UserPayloads.id(2), "\"etag-2\"", null, user(2));
+
+        cache.remove(UserPayloads.id(1));
+        Assert.assertNull(cache.get(UserPayloads.id(1)));
+        Assert.assertNotNull(cache.get(UserPayloads.id(2)));
+        Assert.assertEquals(cache.size(), 1);
+        // removing unknown user is harmless
+        cache.remove(UserPayloads.id(3));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        ValidatorCache cache = new ValidatorCache(2);
+        cache.put(UserPayloads.id(1), "\"etag-1\"", null, user(1));
+        cache.put(UserPayloads.id(2), "\"etag-2\"", null, user(2));
+        cache.get(UserPayloads.id(1));
+        cache.put(UserPayloads.id(3), "\"etag-3\"", null, user(3));
+
+        Assert.assertNotNull(cache.get(UserPayloads.id(1)));
+        Assert.assertNull(cache.get(UserPayloads.id(2)));
+        Assert.assertNotNull(cache.get(UserPayloads.id(3)));
+        Assert.assertEquals(cache.getStatistics().get("evictions").longValue(), 1);
+    }
+
+    @Test
+    public void testSharedInstanceIsResized() {
+        String serviceAddress = "http://validator-cache-test/" + System.nanoTime();
+        ValidatorCache cache = ValidatorCache.getInstance(serviceAddress, 10);
+        for (int i = 0; i < 5; i++) {
+            cache.put(UserPayloads.id(i), "\"etag-" + i + "\"", null, user(i));
+        }
+
+        Assert.assertSame(ValidatorCache.getInstance(serviceAddress, 3), cache);
+        Assert.assertEquals(cache.size(), 3);
+        Assert.assertEquals(cache.getStatistics().get("evictions").longValue(), 2);
+    }
+
+    @Test
+    public void testStatistics() {
+        ValidatorCache cache = new ValidatorCache(10);
+        cache.notModified();
+        cache.notModified();
+        cache.modified();
+
+        Assert.assertEquals(cache.getStatistics().get("notModified").longValue(), 2);
+        Assert.assertEquals(cache.getStatistics().get("modified").longValue(), 1);
+        Assert.assertEquals(cache.getStatistics().get("size").longValue(), 0);
+    }
+}